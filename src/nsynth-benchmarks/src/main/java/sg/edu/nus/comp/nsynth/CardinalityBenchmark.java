@@ -0,0 +1,44 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.openjdk.jmh.annotations.*;
+import sg.edu.nus.comp.nsynth.ast.Node;
+import sg.edu.nus.comp.nsynth.ast.Selector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CardinalityBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int bits;
+
+    @Param({"1", "3"})
+    public int k;
+
+    private List<Selector> selectors;
+
+    @Setup
+    public void setup() {
+        selectors = new ArrayList<>();
+        for (int i = 0; i < bits; i++) {
+            selectors.add(new Selector());
+        }
+    }
+
+    @Benchmark
+    public List<Node> sortingNetworkAtMostK() {
+        return Cardinality.SortingNetwork.atMostK(k, selectors);
+    }
+
+    @Benchmark
+    public List<Node> automaticAtMostK() {
+        return Cardinality.atMostK(k, selectors);
+    }
+}
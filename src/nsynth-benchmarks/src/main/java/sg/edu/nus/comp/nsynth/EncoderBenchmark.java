@@ -0,0 +1,36 @@
+package sg.edu.nus.comp.nsynth;
+
+import com.google.common.collect.Multiset;
+import org.openjdk.jmh.annotations.*;
+import sg.edu.nus.comp.nsynth.ast.Expression;
+import sg.edu.nus.comp.nsynth.ast.Node;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class EncoderBenchmark {
+
+    @Param({"EMPTY", "OPERATORS", "LEAVES", "SUBSTITUTION", "CONDITIONAL"})
+    public SynthesisLevel level;
+
+    private TreeBoundedEncoder encoder;
+    private Expression original;
+    private Multiset<Node> components;
+
+    @Setup
+    public void setup() {
+        encoder = new TreeBoundedEncoder();
+        original = SyntheticForests.originalExpression();
+        components = SyntheticForests.components();
+    }
+
+    @Benchmark
+    public Object encode() {
+        return encoder.encode(new RepairShape(original, level), components);
+    }
+}
@@ -0,0 +1,33 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ForestBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int tests;
+
+    @Param({"1", "10"})
+    public int instances;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        json = SyntheticForests.json(tests, instances, 0);
+    }
+
+    @Benchmark
+    public AngelicForest parse() {
+        return AngelicForest.parse(new ByteArrayInputStream(json));
+    }
+}
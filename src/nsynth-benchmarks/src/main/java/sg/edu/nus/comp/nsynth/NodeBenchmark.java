@@ -0,0 +1,75 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.openjdk.jmh.annotations.*;
+import sg.edu.nus.comp.nsynth.ast.*;
+import sg.edu.nus.comp.nsynth.ast.theory.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instantiation, transformation and simplification of balanced arithmetic trees
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class NodeBenchmark {
+
+    @Param({"4", "8", "12"})
+    public int depth;
+
+    private Node node;
+    private AngelixTest test;
+    private AngelixLocation loc;
+    private Map<ProgramVariable, Node> substitution;
+
+    @Setup
+    public void setup() {
+        node = tree(depth, 0);
+        test = new AngelixTest("t", IntType.TYPE);
+        loc = AngelixLocation.parse("1-1-1-1");
+        substitution = new HashMap<>();
+        substitution.put(SyntheticForests.X, IntConst.of(1));
+        substitution.put(SyntheticForests.Y, IntConst.of(2));
+    }
+
+    private static Node tree(int depth, int index) {
+        if (depth == 0) {
+            switch (index % 3) {
+                case 0:
+                    return SyntheticForests.X;
+                case 1:
+                    return SyntheticForests.Y;
+                default:
+                    return IntConst.of(index);
+            }
+        }
+        Node left = tree(depth - 1, 2 * index);
+        Node right = tree(depth - 1, 2 * index + 1);
+        return depth % 2 == 0 ? new Add(left, right) : new Sub(left, right);
+    }
+
+    @Benchmark
+    public Node instantiateTest() {
+        return node.instantiate(test);
+    }
+
+    @Benchmark
+    public Node instantiateLocation() {
+        return node.instantiate(loc);
+    }
+
+    @Benchmark
+    public Node transform() {
+        return Traverse.transform(node, n -> n instanceof IntConst ? IntConst.of(((IntConst) n).getValue() + 1) : n);
+    }
+
+    @Benchmark
+    public Node simplify() {
+        return Simplifier.simplify(Traverse.substitute(node, substitution));
+    }
+}
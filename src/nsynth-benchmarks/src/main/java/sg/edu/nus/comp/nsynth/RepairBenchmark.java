@@ -0,0 +1,58 @@
+package sg.edu.nus.comp.nsynth;
+
+import com.google.common.collect.Multiset;
+import org.openjdk.jmh.annotations.*;
+import sg.edu.nus.comp.nsynth.ast.Expression;
+import sg.edu.nus.comp.nsynth.ast.Node;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end repair of x + y into x - y on forests of increasing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RepairBenchmark {
+
+    @Param({"2", "8", "32", "128"})
+    public int tests;
+
+    @Param({"OPERATORS", "SUBSTITUTION"})
+    public SynthesisLevel level;
+
+    @Param({"false", "true"})
+    public boolean cegis;
+
+    @Param({"fumalik", "maxres", "wmax"})
+    public String maxsat;
+
+    private AngelixSynthesis synthesizer;
+    private AngelicForest angelicForest;
+    private Map<AngelixLocation, Expression> original;
+    private Map<AngelixLocation, Multiset<Node>> components;
+
+    @Setup
+    public void setup() {
+        synthesizer = new AngelixSynthesis();
+        if (cegis) {
+            synthesizer.enableCegis();
+        }
+        if (!maxsat.equals("fumalik")) {
+            synthesizer.enableWeightedMaxsat(maxsat);
+        }
+        angelicForest = SyntheticForests.forest(tests, 1, 0);
+        original = SyntheticForests.original();
+        components = SyntheticForests.componentsMap();
+    }
+
+    @Benchmark
+    public Optional<Map<AngelixLocation, Node>> repair() {
+        return synthesizer.repair(original, angelicForest, components, level);
+    }
+}
@@ -0,0 +1,79 @@
+package sg.edu.nus.comp.nsynth;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import sg.edu.nus.comp.nsynth.ast.Expression;
+import sg.edu.nus.comp.nsynth.ast.Hole;
+import sg.edu.nus.comp.nsynth.ast.Node;
+import sg.edu.nus.comp.nsynth.ast.ProgramVariable;
+import sg.edu.nus.comp.nsynth.ast.theory.IntConst;
+import sg.edu.nus.comp.nsynth.ast.theory.Sub;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Benchmark inputs: single location with original expression x + y and angelic values of x - y
+ */
+class SyntheticForests {
+
+    static final AngelixLocation LOCATION = AngelixLocation.parse("0-0-0-1");
+
+    static final ProgramVariable X = ProgramVariable.mkInt("x");
+    static final ProgramVariable Y = ProgramVariable.mkInt("y");
+
+    static ForestGenerator generator(int tests, int instances, long seed) {
+        return new ForestGenerator(seed)
+                .setTests(tests)
+                .setInstancesPerPath(instances)
+                .addLocation(LOCATION, originalExpression().getSemantics(), new Sub(X, Y));
+    }
+
+    /**
+     * @return angelic forest in the format of AngelicForest.parse, same seed gives same forest
+     */
+    static byte[] json(int tests, int instances, long seed) {
+        return generator(tests, instances, seed).generate().toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    static AngelicForest forest(int tests, int instances, long seed) {
+        return generator(tests, instances, seed).generateForest();
+    }
+
+    static Expression originalExpression() {
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(X));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(Y));
+        return Expression.app(Library.ADD, args);
+    }
+
+    static Map<AngelixLocation, Expression> original() {
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        original.put(LOCATION, originalExpression());
+        return original;
+    }
+
+    static Multiset<Node> components() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(X);
+        components.add(Y);
+        components.add(IntConst.of(1));
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        components.add(Library.MINUS);
+        components.add(Library.GT);
+        components.add(Library.GE);
+        components.add(Library.EQ);
+        components.add(Library.AND);
+        components.add(Library.OR);
+        components.add(Library.NOT);
+        return components;
+    }
+
+    static Map<AngelixLocation, Multiset<Node>> componentsMap() {
+        Map<AngelixLocation, Multiset<Node>> components = new HashMap<>();
+        components.put(LOCATION, components());
+        return components;
+    }
+}
@@ -1,12 +1,12 @@
 package sg.edu.nus.comp.nsynth;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import sg.edu.nus.comp.nsynth.ast.*;
 import sg.edu.nus.comp.nsynth.ast.theory.BoolConst;
 import sg.edu.nus.comp.nsynth.ast.theory.IntConst;
 
-import javax.json.*;
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
 import java.io.InputStream;
 import java.util.*;
 
@@ -16,6 +16,10 @@ import java.util.*;
 public class AngelicForest {
     private Map<AngelixTest, List<AngelicPath>> paths;
 
+    // built on demand
+    private Set<AngelixLocation> locations = null;
+    private Map<AngelixLocation, Set<ProgramVariable>> contextVariables = null;
+
     public AngelicForest(Map<AngelixTest, List<AngelicPath>> paths) {
         this.paths = paths;
     }
@@ -24,77 +28,219 @@ public class AngelicForest {
         return paths;
     }
 
+    /**
+     * Streaming parser: the JSON tree is not materialized, and variables and locations are shared between paths
+     */
     public static AngelicForest parse(InputStream inputStream) {
-        Map<AngelixTest, List<AngelicPath>> paths = new HashMap<>();
-        JsonReader reader = Json.createReader(inputStream);
-        JsonObject forestObj = reader.readObject();
-        for (String testName : forestObj.keySet()) {
-            List<JsonArray> rawPaths = forestObj.getJsonArray(testName).getValuesAs(JsonArray.class);
-            List<AngelicPath> pathsForTest = new ArrayList<>();
-            Type type = null;
-            for (JsonArray rawPath : rawPaths) {
-                Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicValues = new HashMap<>();
-                for (JsonObject valueObj : rawPath.getValuesAs(JsonObject.class)) {
-                    JsonValue angelicVal = valueObj.getJsonObject("value").get("value");
-                    Constant angelic;
-                    if (angelicVal.getValueType().equals(JsonValue.ValueType.FALSE)) {
-                        angelic = BoolConst.FALSE;
-                        type = BoolType.TYPE;
-                    } else if (angelicVal.getValueType().equals(JsonValue.ValueType.TRUE)) {
-                        angelic = BoolConst.TRUE;
-                        type = BoolType.TYPE;
-                    } else if (angelicVal.getValueType().equals(JsonValue.ValueType.NUMBER)) {
-                        angelic = IntConst.of(Integer.parseInt(angelicVal.toString()));
-                        type = IntType.TYPE;
-                    } else {
-                        throw new RuntimeException("Unsupported value in angelic forest");
-                    }
-                    int instance = valueObj.getInt("instId");
-                    AngelixLocation loc = AngelixLocation.parse(valueObj.getString("expression"));
-                    JsonArray context = valueObj.getJsonArray("context");
-                    Map<ProgramVariable, Constant> env = new HashMap<>();
-                    for (JsonObject binding : context.getValuesAs(JsonObject.class)) {
-                        String variable = binding.getString("name");
-                        Constant value = IntConst.of(binding.getInt("value"));
-                        env.put(ProgramVariable.mkInt(variable), value);
+        return new StreamingParser(Json.createParser(inputStream)).parseForest();
+    }
+
+    private static class StreamingParser {
+        private JsonParser parser;
+
+        private Map<String, ProgramVariable> variables = new HashMap<>();
+        private Map<String, AngelixLocation> locations = new HashMap<>();
+
+        // type of the last parsed angelic value
+        private Type type;
+
+        // context of the value being parsed
+        private List<ProgramVariable> contextVariables = new ArrayList<>();
+        private int[] contextValues = new int[16];
+        private int contextSize;
+
+        StreamingParser(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        AngelicForest parseForest() {
+            Map<AngelixTest, List<AngelicPath>> paths = new HashMap<>();
+            expect(Event.START_OBJECT);
+            Event event;
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                check(event, Event.KEY_NAME);
+                String testName = parser.getString();
+                type = null;
+                List<AngelicPath> pathsForTest = new ArrayList<>();
+                expect(Event.START_ARRAY);
+                while ((event = parser.next()) != Event.END_ARRAY) {
+                    check(event, Event.START_ARRAY);
+                    pathsForTest.add(parsePath());
+                }
+                if (type != null) {
+                    paths.put(new AngelixTest(testName, type), pathsForTest);
+                } else {
+                    throw new RuntimeException("Inconsistent types in angelic forest");
+                }
+            }
+            parser.close();
+            return new AngelicForest(paths);
+        }
+
+        private AngelicPath parsePath() {
+            AngelicPath.Builder builder = new AngelicPath.Builder();
+            Event event;
+            while ((event = parser.next()) != Event.END_ARRAY) {
+                check(event, Event.START_OBJECT);
+                Constant angelic = null;
+                Integer instance = null;
+                AngelixLocation loc = null;
+                boolean hasContext = false;
+                contextVariables.clear();
+                contextSize = 0;
+                while ((event = parser.next()) != Event.END_OBJECT) {
+                    check(event, Event.KEY_NAME);
+                    switch (parser.getString()) {
+                        case "value":
+                            angelic = parseAngelicValue();
+                            break;
+                        case "instId":
+                            expect(Event.VALUE_NUMBER);
+                            instance = parser.getInt();
+                            break;
+                        case "expression":
+                            expect(Event.VALUE_STRING);
+                            loc = locations.computeIfAbsent(parser.getString(), AngelixLocation::parse);
+                            break;
+                        case "context":
+                            parseContext();
+                            hasContext = true;
+                            break;
+                        default:
+                            skip(parser.next());
                     }
-                    if (!angelicValues.containsKey(loc)) {
-                        angelicValues.put(loc, new HashMap<>());
+                }
+                if (angelic == null || instance == null || loc == null || !hasContext) {
+                    throw new RuntimeException("Incomplete value in angelic forest");
+                }
+                builder.add(loc, instance, angelic, contextVariables, Arrays.copyOf(contextValues, contextSize));
+            }
+            return builder.build();
+        }
+
+        private Constant parseAngelicValue() {
+            expect(Event.START_OBJECT);
+            Constant angelic = null;
+            Event event;
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                check(event, Event.KEY_NAME);
+                if (!parser.getString().equals("value")) {
+                    skip(parser.next());
+                    continue;
+                }
+                event = parser.next();
+                if (event == Event.VALUE_FALSE) {
+                    angelic = BoolConst.FALSE;
+                    type = BoolType.TYPE;
+                } else if (event == Event.VALUE_TRUE) {
+                    angelic = BoolConst.TRUE;
+                    type = BoolType.TYPE;
+                } else if (event == Event.VALUE_NUMBER) {
+                    angelic = IntConst.of(Integer.parseInt(parser.getString()));
+                    type = IntType.TYPE;
+                } else {
+                    throw new RuntimeException("Unsupported value in angelic forest");
+                }
+            }
+            return angelic;
+        }
+
+        private void parseContext() {
+            expect(Event.START_ARRAY);
+            Event event;
+            while ((event = parser.next()) != Event.END_ARRAY) {
+                check(event, Event.START_OBJECT);
+                String name = null;
+                Integer value = null;
+                while ((event = parser.next()) != Event.END_OBJECT) {
+                    check(event, Event.KEY_NAME);
+                    switch (parser.getString()) {
+                        case "name":
+                            expect(Event.VALUE_STRING);
+                            name = parser.getString();
+                            break;
+                        case "value":
+                            expect(Event.VALUE_NUMBER);
+                            value = parser.getInt();
+                            break;
+                        default:
+                            skip(parser.next());
                     }
-                    angelicValues.get(loc).put(instance, new ImmutablePair<>(angelic, env));
                 }
-                pathsForTest.add(new AngelicPath(angelicValues));
+                if (name == null || value == null) {
+                    throw new RuntimeException("Incomplete context in angelic forest");
+                }
+                if (contextSize == contextValues.length) {
+                    contextValues = Arrays.copyOf(contextValues, contextSize * 2);
+                }
+                contextVariables.add(variables.computeIfAbsent(name, ProgramVariable::mkInt));
+                contextValues[contextSize++] = value;
+            }
+        }
+
+        private void expect(Event expected) {
+            check(parser.next(), expected);
+        }
+
+        private void check(Event actual, Event expected) {
+            if (actual != expected) {
+                throw new RuntimeException("Malformed angelic forest: expected " + expected + ", found " + actual);
             }
-            if (type != null) {
-                paths.put(new AngelixTest(testName, type), pathsForTest);
-            } else {
-                throw new RuntimeException("Inconsistent types in angelic forest");
+        }
+
+        private void skip(Event event) {
+            if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                int depth = 1;
+                while (depth > 0) {
+                    event = parser.next();
+                    if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                        depth++;
+                    } else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+                        depth--;
+                    }
+                }
             }
         }
-        return new AngelicForest(paths);
     }
 
     public Set<AngelixLocation> getAllLocations() {
-        Set<AngelixLocation> result = new HashSet<>();
-        for (Map.Entry<AngelixTest, List<AngelicPath>> entry : this.getPaths().entrySet()) {
-            List<AngelicPath> paths = entry.getValue();
-            for (AngelicPath path : paths) {
-                result.addAll(path.getAngelicValues().keySet());
-            }
+        if (locations == null) {
+            index();
         }
-        return result;
+        return locations;
     }
 
     public Set<ProgramVariable> getContextVariables(AngelixLocation loc) {
-        for (Map.Entry<AngelixTest, List<AngelicPath>> entry : this.getPaths().entrySet()) {
-            List<AngelicPath> paths = entry.getValue();
-            for (AngelicPath path : paths) {
-                if (path.getAngelicValues().containsKey(loc)) {
-                    return path.getAngelicValues().get(loc).get(0).getRight().keySet();
+        if (contextVariables == null) {
+            index();
+        }
+        return contextVariables.getOrDefault(loc, new HashSet<>());
+    }
+
+    /**
+     * Context variables of a location are taken from its first instance
+     */
+    private void index() {
+        Set<AngelixLocation> allLocations = new HashSet<>();
+        Map<AngelixLocation, Set<ProgramVariable>> variables = new HashMap<>();
+        for (List<AngelicPath> pathsForTest : paths.values()) {
+            for (AngelicPath path : pathsForTest) {
+                for (AngelixLocation loc : path.getLocations()) {
+                    allLocations.add(loc);
+                    if (!variables.containsKey(loc) && path.getInstanceCount(loc) > 0) {
+                        int first = 0;
+                        for (int i = 0; i < path.getInstanceCount(loc); i++) {
+                            if (path.getInstance(loc, i) == 0) {
+                                first = i;
+                            }
+                        }
+                        variables.put(loc, new HashSet<>(path.getContextVariables(loc, first)));
+                    }
                 }
             }
         }
-        return new HashSet<>();
+        this.locations = allLocations;
+        this.contextVariables = variables;
     }
 
     @Override
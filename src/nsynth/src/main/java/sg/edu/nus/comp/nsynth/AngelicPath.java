@@ -1,28 +1,275 @@
 package sg.edu.nus.comp.nsynth;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import sg.edu.nus.comp.nsynth.ast.BoolType;
 import sg.edu.nus.comp.nsynth.ast.Constant;
 import sg.edu.nus.comp.nsynth.ast.ProgramVariable;
+import sg.edu.nus.comp.nsynth.ast.theory.BoolConst;
+import sg.edu.nus.comp.nsynth.ast.theory.IntConst;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * expr -> instance -> angelic value * angelic state
+ *
+ * Values are stored per location in int arrays (booleans as 0/1, boolean angelic values are marked in a bitset),
+ * context values are indexed by variable tables that are shared between all paths.
  */
 public class AngelicPath {
-    private Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicValues;
+
+    private static final Interner<List<ProgramVariable>> variableTables = Interners.newWeakInterner();
+
+    private static class LocationValues {
+        private int size = 0;
+        private int[] instances = new int[1];
+        private int[] angelic = new int[1];
+        private BitSet boolAngelic = new BitSet();
+        private List<ProgramVariable>[] tables = newTables(1);
+        private int[][] context = new int[1][];
+        // from instance to its index, only while building
+        private Map<Integer, Integer> slots = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        private static List<ProgramVariable>[] newTables(int size) {
+            return (List<ProgramVariable>[]) new List[size];
+        }
+
+        private void add(int instance, Constant angelicValue, List<ProgramVariable> table, int[] values) {
+            Integer slot = slots.putIfAbsent(instance, size);
+            if (slot != null) {
+                set(slot, instance, angelicValue, table, values);
+                return;
+            }
+            if (size == instances.length) {
+                int capacity = size * 2;
+                instances = Arrays.copyOf(instances, capacity);
+                angelic = Arrays.copyOf(angelic, capacity);
+                tables = Arrays.copyOf(tables, capacity);
+                context = Arrays.copyOf(context, capacity);
+            }
+            set(size, instance, angelicValue, table, values);
+            size++;
+        }
+
+        private void set(int i, int instance, Constant angelicValue, List<ProgramVariable> table, int[] values) {
+            instances[i] = instance;
+            angelic[i] = Evaluator.toInt(angelicValue);
+            boolAngelic.set(i, angelicValue instanceof BoolConst);
+            tables[i] = table;
+            context[i] = values;
+        }
+
+        private void trim() {
+            instances = Arrays.copyOf(instances, size);
+            angelic = Arrays.copyOf(angelic, size);
+            tables = Arrays.copyOf(tables, size);
+            context = Arrays.copyOf(context, size);
+            slots = null;
+        }
+
+        /**
+         * Compares trimmed values, tables are interned and compared by identity
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LocationValues))
+                return false;
+            if (obj == this)
+                return true;
+
+            LocationValues rhs = (LocationValues) obj;
+            if (size != rhs.size
+                    || !Arrays.equals(instances, rhs.instances)
+                    || !Arrays.equals(angelic, rhs.angelic)
+                    || !boolAngelic.equals(rhs.boolAngelic)) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (tables[i] != rhs.tables[i] || !Arrays.equals(context[i], rhs.context[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            HashCodeBuilder builder = new HashCodeBuilder(17, 31).
+                    append(instances).
+                    append(angelic).
+                    append(boolAngelic);
+            for (int i = 0; i < size; i++) {
+                builder.append(System.identityHashCode(tables[i])).append(context[i]);
+            }
+            return builder.toHashCode();
+        }
+    }
+
+    private final Map<AngelixLocation, LocationValues> values;
+
+    private AngelicPath(Builder builder) {
+        for (LocationValues locationValues : builder.values.values()) {
+            locationValues.trim();
+        }
+        this.values = builder.values;
+    }
 
     public AngelicPath(Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicValues) {
-        this.angelicValues = angelicValues;
+        this(builderOf(angelicValues));
+    }
+
+    private static Builder builderOf(Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicValues) {
+        Builder builder = new Builder();
+        for (Map.Entry<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> entry : angelicValues.entrySet()) {
+            for (Map.Entry<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> instance : entry.getValue().entrySet()) {
+                builder.add(entry.getKey(), instance.getKey(), instance.getValue().getLeft(), instance.getValue().getRight());
+            }
+        }
+        return builder;
+    }
+
+    public static class Builder {
+        private Map<AngelixLocation, LocationValues> values = new HashMap<>();
+
+        /**
+         * @param variables context variables, values[i] is the value of variables.get(i)
+         */
+        public Builder add(AngelixLocation loc, int instance, Constant angelic, List<ProgramVariable> variables, int[] values) {
+            if (variables.size() != values.length) {
+                throw new IllegalArgumentException("context variables and values do not match");
+            }
+            List<ProgramVariable> table = variableTables.intern(ImmutableList.copyOf(variables));
+            this.values.computeIfAbsent(loc, l -> new LocationValues()).add(instance, angelic, table, values);
+            return this;
+        }
+
+        public Builder add(AngelixLocation loc, int instance, Constant angelic, Map<ProgramVariable, Constant> context) {
+            List<ProgramVariable> variables = new ArrayList<>(context.size());
+            int[] values = new int[context.size()];
+            for (Map.Entry<ProgramVariable, Constant> entry : context.entrySet()) {
+                values[variables.size()] = Evaluator.toInt(entry.getValue());
+                variables.add(entry.getKey());
+            }
+            return add(loc, instance, angelic, variables, values);
+        }
+
+        public AngelicPath build() {
+            AngelicPath path = new AngelicPath(this);
+            values = new HashMap<>();
+            return path;
+        }
+    }
+
+    public Set<AngelixLocation> getLocations() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * @return number of instances of the location on this path
+     */
+    public int getInstanceCount(AngelixLocation loc) {
+        LocationValues locationValues = values.get(loc);
+        return locationValues == null ? 0 : locationValues.size;
     }
 
+    /**
+     * @param i index between 0 and getInstanceCount(loc)
+     * @return execution instance identifier
+     */
+    public int getInstance(AngelixLocation loc, int i) {
+        return values.get(loc).instances[i];
+    }
+
+    public int getAngelicInt(AngelixLocation loc, int i) {
+        return values.get(loc).angelic[i];
+    }
+
+    public Constant getAngelicValue(AngelixLocation loc, int i) {
+        LocationValues locationValues = values.get(loc);
+        if (locationValues.boolAngelic.get(i)) {
+            return BoolConst.of(locationValues.angelic[i] != 0);
+        }
+        return IntConst.of(locationValues.angelic[i]);
+    }
+
+    /**
+     * Shared between paths, can be compared by identity
+     */
+    public List<ProgramVariable> getContextVariables(AngelixLocation loc, int i) {
+        return values.get(loc).tables[i];
+    }
+
+    /**
+     * Values of getContextVariables(loc, i). Must not be modified.
+     */
+    public int[] getContextValues(AngelixLocation loc, int i) {
+        return values.get(loc).context[i];
+    }
+
+    public Constant getContextValue(AngelixLocation loc, int i, int j) {
+        return toConstant(getContextVariables(loc, i).get(j), getContextValues(loc, i)[j]);
+    }
+
+    public Map<ProgramVariable, Constant> getContext(AngelixLocation loc, int i) {
+        List<ProgramVariable> variables = getContextVariables(loc, i);
+        int[] contextValues = getContextValues(loc, i);
+        Map<ProgramVariable, Constant> context = new HashMap<>();
+        for (int j = 0; j < variables.size(); j++) {
+            context.put(variables.get(j), toConstant(variables.get(j), contextValues[j]));
+        }
+        return context;
+    }
+
+    /**
+     * Materialized view, not cached
+     */
     public Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> getAngelicValues() {
+        Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicValues = new HashMap<>();
+        for (AngelixLocation loc : values.keySet()) {
+            Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> instances = new HashMap<>();
+            for (int i = 0; i < getInstanceCount(loc); i++) {
+                instances.put(getInstance(loc, i), new ImmutablePair<>(getAngelicValue(loc, i), getContext(loc, i)));
+            }
+            angelicValues.put(loc, instances);
+        }
         return angelicValues;
     }
 
+    private static Constant toConstant(ProgramVariable variable, int value) {
+        if (variable.getType().equals(BoolType.TYPE)) {
+            return BoolConst.of(value != 0);
+        }
+        return IntConst.of(value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof AngelicPath))
+            return false;
+        if (obj == this)
+            return true;
+
+        AngelicPath rhs = (AngelicPath) obj;
+        return new EqualsBuilder().
+                append(values, rhs.values).
+                isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(17, 31).
+                append(values).
+                toHashCode();
+    }
+
     @Override
     public String toString() {
-        return angelicValues.toString();
+        return getAngelicValues().toString();
     }
 }
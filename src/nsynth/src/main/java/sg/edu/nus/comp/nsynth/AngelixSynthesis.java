@@ -6,88 +6,708 @@ import org.apache.commons.lang3.tuple.Triple;
 import sg.edu.nus.comp.nsynth.ast.*;
 import sg.edu.nus.comp.nsynth.TreeBoundedEncoder.EncodingInfo;
 import sg.edu.nus.comp.nsynth.ast.theory.Equal;
+import sg.edu.nus.comp.nsynth.ast.theory.Not;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by Sergey Mechtaev on 19/7/2016.
  */
 public class AngelixSynthesis {
+    private Logger logger = LoggerFactory.getLogger(AngelixSynthesis.class);
+
+    private static final int SOLVER_BOUND = 3;
+
     private Z3 solver;
 
+    private boolean portfolio = false;
+
+    private boolean cegis = false;
+
+    private static final int CEGIS_INITIAL_TESTS = 1;
+
+    private boolean parallelEncoding = false;
+
+    private Optional<Integer> timeout = Optional.empty();
+
+    private Optional<EncodingCache> encodingCache = Optional.empty();
+
+    private Optional<String> weightedMaxsatEngine = Optional.empty();
+
+    private boolean symmetryBreaking = false;
+
+    private boolean incrementalLevels = false;
+
+    private boolean incrementalForest = false;
+
+    // from group of levels to its session from previous repair calls
+    private Map<List<SynthesisLevel>, RepairSession> sessions = new HashMap<>();
+
+    private Metrics metrics = new Metrics();
+
+    private static final ThreadFactory DAEMON_THREADS = runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    };
+
     public AngelixSynthesis() {
-        this.solver = new Z3();
-        solver.enableCustomMaxsatWithBound(3);
+        this.solver = newSolver();
+    }
+
+    private Z3 newSolver() {
+        Z3 z3 = new Z3();
+        z3.enableCustomMaxsatWithBound(SOLVER_BOUND);
+        timeout.ifPresent(z3::enableTimeout);
+        weightedMaxsatEngine.ifPresent(z3::enableMaxsatEngine);
+        z3.setMetrics(metrics);
+        return z3;
+    }
+
+    /**
+     * Run levels concurrently, each with own encoder and Z3 context
+     */
+    public void enablePortfolio() {
+        portfolio = true;
+    }
+
+    public void disablePortfolio() {
+        portfolio = false;
+    }
+
+    /**
+     * Add tests to the solver lazily, only when they are violated by a candidate patch
+     */
+    public void enableCegis() {
+        cegis = true;
+    }
+
+    public void disableCegis() {
+        cegis = false;
+    }
+
+    /**
+     * Encode locations and instantiate test clauses on the common fork-join pool.
+     * Results are merged in the order of locations and tests, so constraints do not depend on scheduling
+     */
+    public void enableParallelEncoding() {
+        parallelEncoding = true;
+    }
+
+    public void disableParallelEncoding() {
+        parallelEncoding = false;
+    }
+
+    /**
+     * @param milliseconds wall-clock budget of a repair call, also the budget of each solver query.
+     *                     Exceeding it raises SolverTimeoutException
+     */
+    public void enableTimeout(int milliseconds) {
+        timeout = Optional.of(milliseconds);
+        solver.enableTimeout(milliseconds);
+    }
+
+    public void disableTimeout() {
+        timeout = Optional.empty();
+        solver.disableTimeout();
+    }
+
+    /**
+     * Reuse location encodings between repair calls with the same original expressions, levels and components
+     * @param capacity maximum number of cached location encodings
+     */
+    public void enableEncodingCache(int capacity) {
+        encodingCache = Optional.of(new EncodingCache(capacity));
+    }
+
+    public void disableEncodingCache() {
+        encodingCache = Optional.empty();
+    }
+
+    public Optional<EncodingCache> getEncodingCache() {
+        return encodingCache;
+    }
+
+    /**
+     * Exclude one of the argument orders of commutative components whose arguments are synthesized from scratch
+     */
+    public void enableSymmetryBreaking() {
+        symmetryBreaking = true;
+    }
+
+    public void disableSymmetryBreaking() {
+        symmetryBreaking = false;
+    }
+
+    /**
+     * Consecutive levels included in a common level (EMPTY, OPERATORS, LEAVES, SUBSTITUTION) are encoded once
+     * with the smallest such level and queried in priority order by the same solver session,
+     * weaker levels being expressed as assumptions. Not used in portfolio mode
+     */
+    public void enableIncrementalLevels() {
+        incrementalLevels = true;
+    }
+
+    public void disableIncrementalLevels() {
+        incrementalLevels = false;
+    }
+
+    /**
+     * Keep encodings and solver sessions between repair calls. If a call has the same original expressions,
+     * components and settings as the previous one and its forest only adds tests, only the clauses of the new tests
+     * are asserted. The previous patch is checked on the new tests first and is returned if it satisfies them;
+     * otherwise, in CEGIS mode the violated tests are the first counterexamples. Not used in portfolio mode
+     */
+    public void enableIncrementalForest() {
+        incrementalForest = true;
+    }
+
+    public void disableIncrementalForest() {
+        incrementalForest = false;
+        sessions.clear();
+    }
+
+    /**
+     * Minimize weighted distance to the original expression using Z3 Optimize instead of bounded Fu-Malik.
+     * Keeping an original component weighs as much as the number of its nodes
+     * @param engine MaxSAT engine of Z3, e.g. maxres, pd-maxres, wmax
+     */
+    public void enableWeightedMaxsat(String engine) {
+        weightedMaxsatEngine = Optional.of(engine);
+        solver.enableMaxsatEngine(engine);
+    }
+
+    public void disableWeightedMaxsat() {
+        weightedMaxsatEngine = Optional.empty();
+        solver.disableMaxsatEngine();
+    }
+
+    /**
+     * Records encoding, instantiation, solving and decoding times and constraint sizes of subsequent repair calls
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        solver.setMetrics(metrics);
     }
 
     public Optional<Map<AngelixLocation, Node>> repair(Map<AngelixLocation, Expression> original,
                                                        AngelicForest angelicForest,
                                                        Map<AngelixLocation, Multiset<Node>> components,
                                                        SynthesisLevel level) {
-        Set<AngelixLocation> locations = angelicForest.getAllLocations();
-        assert locations.stream().filter(loc -> !original.containsKey(loc)).count() == 0; //no locations without original expr
+        return repair(original, angelicForest, components, Collections.singletonList(level));
+    }
 
-        List<Node> hard = new ArrayList<>();
-        List<Node> soft = new ArrayList<>();
+    /**
+     * @param levels synthesis levels in priority order
+     * @return patch for the first level (in priority order) that succeeded
+     */
+    public Optional<Map<AngelixLocation, Node>> repair(Map<AngelixLocation, Expression> original,
+                                                       AngelicForest angelicForest,
+                                                       Map<AngelixLocation, Multiset<Node>> components,
+                                                       List<SynthesisLevel> levels) {
+        if (!portfolio || levels.size() < 2) {
+            return withWatchdog(() -> {
+                for (List<SynthesisLevel> group : groupLevels(levels)) {
+                    Optional<Map<AngelixLocation, Node>> result = repair(solver, original, angelicForest, components, group);
+                    if (result.isPresent()) {
+                        return result;
+                    }
+                }
+                return Optional.empty();
+            });
+        }
 
-        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
-        Map<AngelixLocation, Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> encodings = new HashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout.orElse(0));
+        boolean timedOut = false;
 
-        for (AngelixLocation loc : locations) {
-            Shape shape = new RepairShape(original.get(loc), level);
-            encodings.put(loc, encoder.encode(shape, components.get(loc)));
+        int threads = Math.min(levels.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, DAEMON_THREADS);
+
+        AtomicReferenceArray<Z3> solvers = new AtomicReferenceArray<>(levels.size());
+        List<Future<Optional<Map<AngelixLocation, Node>>>> futures = new ArrayList<>();
+        for (int i = 0; i < levels.size(); i++) {
+            int index = i;
+            SynthesisLevel level = levels.get(i);
+            futures.add(executor.submit(() -> {
+                Z3 levelSolver = newSolver();
+                solvers.set(index, levelSolver);
+                try {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return Optional.empty();
+                    }
+                    return new RepairSession(levelSolver, original, angelicForest, components,
+                            Collections.singletonList(level)).solve(angelicForest);
+                } finally {
+                    levelSolver.close();
+                }
+            }));
         }
 
-        for (Map.Entry<AngelixTest, List<AngelicPath>> entry : angelicForest.getPaths().entrySet()) {
-            AngelixTest test = entry.getKey();
-            List<AngelicPath> paths = entry.getValue();
-            List<Node> testClauses = new ArrayList<>();
-            for (AngelicPath path : paths) {
-                Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicForLoc = path.getAngelicValues();
-                List<Node> pathClauses = new ArrayList<>();
-                for (AngelixLocation loc : locations) {
-                    List<Node> locationClauses = new ArrayList<>();
-                    for (Map.Entry<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> content : angelicForLoc.get(loc).entrySet()) {
-                        int instance = content.getKey();
-                        List<Node> synthesisClauses = new ArrayList<>(encodings.get(loc).getMiddle().getLeft());
-                        synthesisClauses.addAll(angelicConstraints(encodings.get(loc).getLeft(), content.getValue()));
-                        List<Node> instantiated = synthesisClauses.stream().map(n -> n.instantiate(instance)).collect(Collectors.toList());
-                        locationClauses.addAll(instantiated);
+        try {
+            for (int i = 0; i < levels.size(); i++) {
+                Optional<Map<AngelixLocation, Node>> result;
+                try {
+                    if (timeout.isPresent()) {
+                        result = futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    } else {
+                        result = futures.get(i).get();
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SolverTimeoutException) {
+                        timedOut = true;
+                    } else {
+                        logger.warn("synthesis with level " + levels.get(i) + " failed", e.getCause());
                     }
-                    List<Node> instantiated = locationClauses.stream().map(n -> n.instantiate(loc)).collect(Collectors.toList());
-                    pathClauses.addAll(instantiated);
+                    continue;
+                } catch (TimeoutException e) {
+                    throw new SolverTimeoutException("synthesis timeout");
                 }
-                List<Node> instantiated = pathClauses.stream().map(n -> n.instantiate(test)).collect(Collectors.toList());
-                testClauses.add(Node.conjunction(instantiated));
+                if (result.isPresent()) {
+                    return result;
+                }
+            }
+            if (timedOut) {
+                throw new SolverTimeoutException("synthesis timeout");
+            }
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            for (int i = 0; i < levels.size(); i++) {
+                if (!futures.get(i).isDone()) {
+                    futures.get(i).cancel(true);
+                    Z3 levelSolver = solvers.get(i);
+                    if (levelSolver != null) {
+                        levelSolver.interrupt();
+                    }
+                }
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Interrupts the solver when the budget is exceeded. Interrupted solver is replaced by a fresh one
+     */
+    private Optional<Map<AngelixLocation, Node>> withWatchdog(Supplier<Optional<Map<AngelixLocation, Node>>> synthesis) {
+        if (!timeout.isPresent()) {
+            return synthesis.get();
+        }
+        Z3 current = solver;
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(DAEMON_THREADS);
+        watchdog.schedule(current::interrupt, timeout.get(), TimeUnit.MILLISECONDS);
+        try {
+            return synthesis.get();
+        } finally {
+            watchdog.shutdownNow();
+            if (current.isInterrupted()) {
+                current.close();
+                solver = newSolver();
+                sessions.clear();
             }
-            hard.add(Node.disjunction(testClauses));
         }
+    }
 
-        for (AngelixLocation location : locations) {
-            soft.addAll(encodings.get(location).getMiddle().getRight());
+    /**
+     * @return levels split into groups that are synthesized with a single encoding
+     */
+    private List<List<SynthesisLevel>> groupLevels(List<SynthesisLevel> levels) {
+        List<List<SynthesisLevel>> groups = new ArrayList<>();
+        for (SynthesisLevel level : levels) {
+            if (incrementalLevels && !groups.isEmpty()) {
+                List<SynthesisLevel> last = groups.get(groups.size() - 1);
+                if (SynthesisLevel.SUBSTITUTION.includes(last.get(0)) && SynthesisLevel.SUBSTITUTION.includes(level)) {
+                    last.add(level);
+                    continue;
+                }
+            }
+            groups.add(new ArrayList<>(Collections.singletonList(level)));
         }
+        return groups;
+    }
 
-        Optional<Map<Variable, Constant>> solverResult = solver.maxsat(hard, soft);
-        if (solverResult.isPresent()) {
-            Map<AngelixLocation, Node> result = new HashMap<>();
-            for (AngelixLocation loc : locations) {
-                Map<Variable, Constant> relevant = relevantSubmodel(solverResult.get(), loc);
-                Pair<Expression, Map<Parameter, Constant>> decoded =
-                        encoder.decode(relevant, encodings.get(loc).getLeft(), encodings.get(loc).getRight());
-                result.put(loc, decoded.getLeft().getSemantics(decoded.getRight()));
+    /**
+     * @return smallest level that includes all levels
+     */
+    private static SynthesisLevel encodingLevel(List<SynthesisLevel> levels) {
+        for (SynthesisLevel candidate : SynthesisLevel.values()) {
+            if (levels.stream().allMatch(candidate::includes)) {
+                return candidate;
             }
-            return Optional.of(result);
+        }
+        throw new IllegalArgumentException("no level includes " + levels);
+    }
+
+    private Optional<Map<AngelixLocation, Node>> repair(Z3 solver,
+                                                        Map<AngelixLocation, Expression> original,
+                                                        AngelicForest angelicForest,
+                                                        Map<AngelixLocation, Multiset<Node>> components,
+                                                        List<SynthesisLevel> levels) {
+        if (!incrementalForest) {
+            return new RepairSession(solver, original, angelicForest, components, levels).solve(angelicForest);
+        }
+        RepairSession session = sessions.get(levels);
+        if (session != null && session.isExtendedBy(solver, original, angelicForest, components)) {
+            metrics.count("reusedSessions", 1);
         } else {
-            return Optional.empty();
+            session = new RepairSession(solver, original, angelicForest, components, levels);
+            sessions.put(levels, session);
+        }
+        try {
+            return session.solve(angelicForest);
+        } catch (RuntimeException e) {
+            sessions.remove(levels);
+            throw e;
+        }
+    }
+
+    /**
+     * Encoding of a group of levels and the solver session with the asserted tests
+     */
+    private class RepairSession {
+        private final Z3 solver;
+        private final List<Object> settings;
+        private final Map<AngelixLocation, Expression> original;
+        private final Map<AngelixLocation, Multiset<Node>> components;
+        private final Set<AngelixLocation> locations;
+
+        // levels in priority order, all included in encodingLevel
+        private final List<SynthesisLevel> levels;
+        private final SynthesisLevel encodingLevel;
+
+        private final TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        private final Map<AngelixLocation, Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> encodings = new HashMap<>();
+        // clauses that do not depend on tests and executions are asserted once per location
+        private final Map<AngelixLocation, List<Node>> dataflowClauses = new HashMap<>();
+        private final Z3.MaxsatSession session;
+
+        // tests whose clauses are asserted in session
+        private final Map<AngelixTest, List<AngelicPath>> asserted = new HashMap<>();
+        // levels before this index are infeasible for asserted tests
+        private int firstLevel = 0;
+        // last patch, it satisfies asserted tests
+        private Optional<Map<AngelixLocation, Node>> lastPatch = Optional.empty();
+
+        private RepairSession(Z3 solver,
+                              Map<AngelixLocation, Expression> original,
+                              AngelicForest angelicForest,
+                              Map<AngelixLocation, Multiset<Node>> components,
+                              List<SynthesisLevel> levels) {
+            this.solver = solver;
+            this.settings = getSettings();
+            this.original = original;
+            this.components = components;
+            this.levels = levels;
+            this.encodingLevel = encodingLevel(levels);
+            this.locations = angelicForest.getAllLocations();
+            assert locations.stream().filter(loc -> !original.containsKey(loc)).count() == 0; //no locations without original expr
+
+            if (symmetryBreaking) {
+                encoder.enableSymmetryBreaking();
+            }
+
+            List<Node> hard = new ArrayList<>();
+            List<Node> soft = new ArrayList<>();
+
+            List<AngelixLocation> orderedLocations = new ArrayList<>(locations);
+            List<Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> locationEncodings = metrics.time("encoding", () ->
+                    map(orderedLocations, loc -> encode(encoder, loc, new RepairShape(original.get(loc), encodingLevel), components.get(loc))));
+
+            metrics.time("instantiation", () -> {
+                List<Map<Boolean, List<Node>>> locationClauses = map(locationEncodings, encoding ->
+                        encoding.getMiddle().getLeft().stream()
+                                .collect(Collectors.partitioningBy(n ->
+                                        n.hasTestInstantiableVariables() || n.hasExecutionInstantiableVariables())));
+
+                for (int i = 0; i < orderedLocations.size(); i++) {
+                    AngelixLocation loc = orderedLocations.get(i);
+                    encodings.put(loc, locationEncodings.get(i));
+                    Map<Boolean, List<Node>> clauses = locationClauses.get(i);
+                    for (Node clause : clauses.get(false)) {
+                        hard.add(clause.instantiate(loc));
+                    }
+                    dataflowClauses.put(loc, clauses.get(true));
+                }
+            });
+
+            List<Integer> weights = new ArrayList<>();
+            for (AngelixLocation location : orderedLocations) {
+                soft.addAll(encodings.get(location).getMiddle().getRight());
+                Map<Selector, Node> selectedComponent = encodings.get(location).getRight().getSelectedComponent();
+                for (Node selector : encodings.get(location).getMiddle().getRight()) {
+                    weights.add(selectedComponent.containsKey(selector) ? componentCost(selectedComponent.get(selector)) : 1);
+                }
+            }
+            countSelectors(locationEncodings);
+            metrics.count("softClauses", soft.size());
+
+            session = weightedMaxsatEngine.isPresent() ?
+                    solver.startWeightedMaxsat(soft, weights) :
+                    solver.startMaxsat(soft);
+            for (Node clause : hard) {
+                session.addHard(clause);
+            }
+            metrics.count("hardClauses", hard.size());
+        }
+
+        /**
+         * Session can be reused if the forest only adds tests to the asserted ones
+         */
+        private boolean isExtendedBy(Z3 solver,
+                                     Map<AngelixLocation, Expression> original,
+                                     AngelicForest angelicForest,
+                                     Map<AngelixLocation, Multiset<Node>> components) {
+            Map<AngelixTest, List<AngelicPath>> paths = angelicForest.getPaths();
+            return this.solver == solver
+                    && settings.equals(getSettings())
+                    && this.original.equals(original)
+                    && this.components.equals(components)
+                    && locations.equals(angelicForest.getAllLocations())
+                    && asserted.entrySet().stream().allMatch(e -> e.getValue().equals(paths.get(e.getKey())));
+        }
+
+        /**
+         * Asserts tests of the forest that are not asserted yet and solves levels starting from the first feasible.
+         * Tests only restrict the search space, so infeasible levels remain infeasible and the last patch remains
+         * optimal if it satisfies the new tests.
+         * @return patch for the first level that succeeded
+         */
+        private Optional<Map<AngelixLocation, Node>> solve(AngelicForest angelicForest) {
+            if (firstLevel == levels.size()) {
+                return Optional.empty();
+            }
+            Map<AngelixTest, List<AngelicPath>> paths = angelicForest.getPaths();
+            List<AngelixTest> remaining = new ArrayList<>(paths.keySet());
+            remaining.removeAll(asserted.keySet());
+
+            // tests violated by the last patch
+            List<AngelixTest> counterexamples;
+            if (lastPatch.isPresent()) {
+                counterexamples = violated(lastPatch.get(), remaining, paths);
+                if (counterexamples.isEmpty()) {
+                    return lastPatch;
+                }
+            } else {
+                counterexamples = new ArrayList<>(remaining.subList(0, Math.min(CEGIS_INITIAL_TESTS, remaining.size())));
+            }
+
+            if (!cegis) {
+                assertTests(remaining, paths);
+                for (; firstLevel < levels.size(); firstLevel++) {
+                    Optional<Map<Variable, Constant>> solverResult = session.solve(restriction(levels.get(firstLevel)));
+                    if (solverResult.isPresent()) {
+                        lastPatch = Optional.of(metrics.time("decoding", () -> decode(solverResult.get(), locations, encoder, encodings)));
+                        return lastPatch;
+                    }
+                }
+                lastPatch = Optional.empty();
+                return lastPatch;
+            }
+
+            // tests added for a level constrain all levels, so they are kept when moving to the next level
+            for (; firstLevel < levels.size(); firstLevel++) {
+                List<Node> assumptions = restriction(levels.get(firstLevel));
+                while (true) {
+                    metrics.count("cegisIterations", 1);
+                    assertTests(counterexamples, paths);
+                    remaining.removeAll(counterexamples);
+                    counterexamples = Collections.emptyList();
+                    Optional<Map<Variable, Constant>> solverResult = session.solve(assumptions);
+                    if (!solverResult.isPresent()) {
+                        break;
+                    }
+                    Map<AngelixLocation, Node> candidate =
+                            metrics.time("decoding", () -> decode(solverResult.get(), locations, encoder, encodings));
+                    counterexamples = violated(candidate, remaining, paths);
+                    logger.info("CEGIS: " + counterexamples.size() + " of " + remaining.size() + " remaining tests violated");
+                    if (counterexamples.isEmpty()) {
+                        lastPatch = Optional.of(candidate);
+                        return lastPatch;
+                    }
+                }
+            }
+            lastPatch = Optional.empty();
+            return lastPatch;
+        }
+
+        private void assertTests(List<AngelixTest> tests, Map<AngelixTest, List<AngelicPath>> paths) {
+            List<Node> testClauses = metrics.time("instantiation", () -> map(tests, test ->
+                    testClause(test, paths.get(test), locations, encodings, dataflowClauses)));
+            for (Node clause : testClauses) {
+                session.addHard(clause);
+            }
+            for (AngelixTest test : tests) {
+                asserted.put(test, paths.get(test));
+            }
+            metrics.count("hardClauses", testClauses.size());
+        }
+
+        private List<AngelixTest> violated(Map<AngelixLocation, Node> patch,
+                                           List<AngelixTest> tests,
+                                           Map<AngelixTest, List<AngelicPath>> paths) {
+            return metrics.time("evaluation", () -> {
+                Map<AngelixLocation, Evaluator> evaluators = new HashMap<>();
+                for (AngelixLocation loc : locations) {
+                    evaluators.put(loc, Evaluator.compile(patch.get(loc)));
+                }
+                return tests.stream()
+                        .filter(test -> !satisfies(evaluators, paths.get(test)))
+                        .collect(Collectors.toList());
+            });
+        }
+
+        /**
+         * @return assumptions restricting encodings of encodingLevel to level
+         */
+        private List<Node> restriction(SynthesisLevel level) {
+            List<Node> assumptions = new ArrayList<>();
+            if (level == encodingLevel) {
+                return assumptions;
+            }
+            for (Map.Entry<AngelixLocation, Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> entry : encodings.entrySet()) {
+                RepairShape shape = new RepairShape(original.get(entry.getKey()), encodingLevel);
+                for (Selector selector : encoder.restrictedSelectors(shape, entry.getValue().getLeft(), entry.getValue().getRight(), level)) {
+                    assumptions.add(new Not(selector));
+                }
+            }
+            metrics.count("restrictedSelectors", assumptions.size());
+            return assumptions;
+        }
+    }
+
+    /**
+     * Options that affect encodings, solver sessions and results
+     */
+    public List<Object> getSettings() {
+        return Arrays.asList(cegis, symmetryBreaking, weightedMaxsatEngine, SOLVER_BOUND, timeout, incrementalForest);
+    }
+
+    private void countSelectors(List<Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> locationEncodings) {
+        Set<Selector> selectors = new HashSet<>();
+        for (Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo> encoding : locationEncodings) {
+            for (Node clause : encoding.getMiddle().getLeft()) {
+                selectors.addAll(Traverse.collectByType(clause, Selector.class));
+            }
+        }
+        metrics.count("selectors", selectors.size());
+    }
+
+    private static int componentCost(Node component) {
+        return Traverse.collectByType(component, Node.class).size();
+    }
+
+    private Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo> encode(TreeBoundedEncoder encoder,
+                                                                                AngelixLocation loc,
+                                                                                RepairShape shape,
+                                                                                Multiset<Node> components) {
+        if (encodingCache.isPresent()) {
+            return encodingCache.get().encode(encoder, loc, shape, components);
+        }
+        return encoder.encode(shape, components);
+    }
+
+    /**
+     * Maps items in parallel if enabled, preserving their order
+     */
+    private <T, R> List<R> map(List<T> items, Function<T, R> function) {
+        Stream<T> stream = parallelEncoding ? items.parallelStream() : items.stream();
+        return stream.map(function).collect(Collectors.toList());
+    }
+
+    /**
+     * Test is satisfied if candidate satisfies one of its angelic paths
+     */
+    private Node testClause(AngelixTest test,
+                            List<AngelicPath> paths,
+                            Set<AngelixLocation> locations,
+                            Map<AngelixLocation, Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> encodings,
+                            Map<AngelixLocation, List<Node>> dataflowClauses) {
+        List<Node> testClauses = new ArrayList<>();
+        for (AngelicPath path : paths) {
+            List<Node> pathClauses = new ArrayList<>();
+            for (AngelixLocation loc : locations) {
+                List<Node> locationClauses = new ArrayList<>();
+                for (int i = 0; i < path.getInstanceCount(loc); i++) {
+                    int instance = path.getInstance(loc, i);
+                    List<Node> synthesisClauses = new ArrayList<>(dataflowClauses.get(loc));
+                    synthesisClauses.addAll(angelicConstraints(encodings.get(loc).getLeft(), path, loc, i));
+                    List<Node> instantiated = synthesisClauses.stream().map(n -> n.instantiate(instance)).collect(Collectors.toList());
+                    locationClauses.addAll(instantiated);
+                }
+                List<Node> instantiated = locationClauses.stream().map(n -> n.instantiate(loc)).collect(Collectors.toList());
+                pathClauses.addAll(instantiated);
+            }
+            List<Node> instantiated = pathClauses.stream().map(n -> n.instantiate(test)).collect(Collectors.toList());
+            testClauses.add(Node.conjunction(instantiated));
+        }
+        return Node.disjunction(testClauses);
+    }
+
+    private Map<AngelixLocation, Node> decode(Map<Variable, Constant> model,
+                                              Set<AngelixLocation> locations,
+                                              TreeBoundedEncoder encoder,
+                                              Map<AngelixLocation, Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> encodings) {
+        Map<AngelixLocation, Node> result = new HashMap<>();
+        for (AngelixLocation loc : locations) {
+            Map<Variable, Constant> relevant = relevantSubmodel(model, loc);
+            Pair<Expression, Map<Parameter, Constant>> decoded =
+                    encoder.decode(relevant, encodings.get(loc).getLeft(), encodings.get(loc).getRight());
+            result.put(loc, decoded.getLeft().getSemantics(decoded.getRight()));
+        }
+        return result;
+    }
+
+    /**
+     * Concretely checks if candidate produces angelic values of one of the paths
+     */
+    private boolean satisfies(Map<AngelixLocation, Evaluator> candidate, List<AngelicPath> paths) {
+        Map<AngelixLocation, int[]> envs = new HashMap<>();
+        for (Map.Entry<AngelixLocation, Evaluator> entry : candidate.entrySet()) {
+            envs.put(entry.getKey(), new int[entry.getValue().getVariables().size()]);
+        }
+        for (AngelicPath path : paths) {
+            if (satisfies(candidate, envs, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean satisfies(Map<AngelixLocation, Evaluator> candidate, Map<AngelixLocation, int[]> envs, AngelicPath path) {
+        for (AngelixLocation loc : path.getLocations()) {
+            Evaluator evaluator = candidate.get(loc);
+            int[] env = envs.get(loc);
+            for (int i = 0; i < path.getInstanceCount(loc); i++) {
+                if (!evaluator.fill(env, path.getContextVariables(loc, i), path.getContextValues(loc, i))) {
+                    return false;
+                }
+                try {
+                    if (evaluator.evaluate(env) != path.getAngelicInt(loc, i)) {
+                        return false;
+                    }
+                } catch (ArithmeticException e) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
-    private List<Node> angelicConstraints(Variable variable, Pair<Constant, Map<ProgramVariable, Constant>> value) {
+    private List<Node> angelicConstraints(Variable variable, AngelicPath path, AngelixLocation loc, int i) {
         List<Node> clauses = new ArrayList<>();
-        clauses.add(new Equal(variable, value.getLeft()));
-        for (Map.Entry<ProgramVariable, Constant> entry : value.getRight().entrySet()) {
-            clauses.add(new Equal(entry.getKey(), entry.getValue()));
+        clauses.add(new Equal(variable, path.getAngelicValue(loc, i)));
+        List<ProgramVariable> context = path.getContextVariables(loc, i);
+        for (int j = 0; j < context.size(); j++) {
+            clauses.add(new Equal(context.get(j), path.getContextValue(loc, i, j)));
         }
         return clauses;
     }
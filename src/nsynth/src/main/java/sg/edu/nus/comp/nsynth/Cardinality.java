@@ -13,18 +13,231 @@ import java.util.List;
  */
 public class Cardinality {
 
+    /**
+     * At most k of bits are true. Chooses the encoding with the smallest estimated number of clauses and auxiliary selectors
+     */
+    public static List<Node> atMostK(int k, List<? extends Variable> bits) {
+        int n = bits.size();
+        if (k >= n) {
+            return new ArrayList<>();
+        }
+        if (k == 0) {
+            List<Node> clauses = new ArrayList<>();
+            for (Variable bit : bits) {
+                clauses.add(new Not(bit));
+            }
+            return clauses;
+        }
+        int sequential = SequentialCounter.size(k, n);
+        int totalizer = Totalizer.size(k, n);
+        if (k == 1) {
+            int pairwise = Pairwise.size(n);
+            int commander = Commander.size(n);
+            int best = Math.min(Math.min(pairwise, commander), Math.min(sequential, totalizer));
+            if (best == pairwise) {
+                return Pairwise.atMostOne(bits);
+            }
+            if (best == commander) {
+                return Commander.atMostOne(bits);
+            }
+        }
+        if (sequential <= totalizer) {
+            return SequentialCounter.atMostK(k, bits);
+        }
+        return Totalizer.atMostK(k, bits);
+    }
+
     public static class Pairwise {
         static List<Node> atMostOne(List<? extends Variable> bits) {
             ArrayList<Node> clauses = new ArrayList<>();
-            for (Variable bit1 : bits) {
-                for (Variable bit2 : bits) {
-                    if (!bit1.equals(bit2)) {
-                        clauses.add(new Or(new Not(bit1), new Not(bit2)));
+            for (int i = 0; i < bits.size(); i++) {
+                for (int j = i + 1; j < bits.size(); j++) {
+                    if (!bits.get(i).equals(bits.get(j))) {
+                        clauses.add(new Or(new Not(bits.get(i)), new Not(bits.get(j))));
                     }
                 }
             }
             return clauses;
         }
+
+        static int size(int n) {
+            return n * (n - 1) / 2;
+        }
+    }
+
+    /**
+     * Towards an Optimal CNF Encoding of Boolean Cardinality Constraints by Carsten Sinz
+     */
+    public static class SequentialCounter {
+
+        public static List<Node> atMostK(int k, List<? extends Variable> bits) {
+            List<Node> clauses = new ArrayList<>();
+            int n = bits.size();
+            if (k >= n) {
+                return clauses;
+            }
+            // counter.get(j) is true if at least j+1 of the bits up to the current one are true
+            List<Selector> counter = fresh(k);
+            clauses.add(new Impl(bits.get(0), counter.get(0)));
+            for (int j = 1; j < k; j++) {
+                clauses.add(new Not(counter.get(j)));
+            }
+            for (int i = 1; i < n - 1; i++) {
+                Variable bit = bits.get(i);
+                List<Selector> next = fresh(k);
+                clauses.add(new Impl(bit, next.get(0)));
+                clauses.add(new Impl(counter.get(0), next.get(0)));
+                for (int j = 1; j < k; j++) {
+                    clauses.add(new Impl(new And(bit, counter.get(j - 1)), next.get(j)));
+                    clauses.add(new Impl(counter.get(j), next.get(j)));
+                }
+                clauses.add(new Or(new Not(bit), new Not(counter.get(k - 1))));
+                counter = next;
+            }
+            clauses.add(new Or(new Not(bits.get(n - 1)), new Not(counter.get(k - 1))));
+            return clauses;
+        }
+
+        private static List<Selector> fresh(int k) {
+            List<Selector> selectors = new ArrayList<>();
+            for (int j = 0; j < k; j++) {
+                selectors.add(new Selector());
+            }
+            return selectors;
+        }
+
+        /**
+         * Number of clauses and auxiliary selectors for 0 < k < n
+         */
+        static int size(int k, int n) {
+            int clauses = 2 * n * k + n - 3 * k - 1;
+            int selectors = (n - 1) * k;
+            return clauses + selectors;
+        }
+    }
+
+    /**
+     * Efficient CNF Encoding of Boolean Cardinality Constraints by Olivier Bailleux and Yacine Boufkhad,
+     * with outputs truncated at k+1
+     */
+    public static class Totalizer {
+
+        public static List<Node> atMostK(int k, List<? extends Variable> bits) {
+            List<Node> clauses = new ArrayList<>();
+            if (k >= bits.size()) {
+                return clauses;
+            }
+            List<? extends Variable> outputs = count(k + 1, bits, clauses);
+            clauses.add(new Not(outputs.get(k)));
+            return clauses;
+        }
+
+        /**
+         * @return unary representation of the number of true bits up to limit: outputs.get(j) if at least j+1 are true
+         */
+        private static List<? extends Variable> count(int limit, List<? extends Variable> bits, List<Node> clauses) {
+            if (bits.size() == 1) {
+                return bits;
+            }
+            int l = bits.size() / 2;
+            List<? extends Variable> left = count(limit, bits.subList(0, l), clauses);
+            List<? extends Variable> right = count(limit, bits.subList(l, bits.size()), clauses);
+            List<Selector> outputs = new ArrayList<>();
+            for (int j = 0; j < Math.min(left.size() + right.size(), limit); j++) {
+                outputs.add(new Selector());
+            }
+            for (int i = 0; i <= left.size(); i++) {
+                for (int j = 0; j <= right.size(); j++) {
+                    if (i + j == 0 || i + j > outputs.size()) {
+                        continue;
+                    }
+                    Selector output = outputs.get(i + j - 1);
+                    if (i == 0) {
+                        clauses.add(new Impl(right.get(j - 1), output));
+                    } else if (j == 0) {
+                        clauses.add(new Impl(left.get(i - 1), output));
+                    } else {
+                        clauses.add(new Impl(new And(left.get(i - 1), right.get(j - 1)), output));
+                    }
+                }
+            }
+            return outputs;
+        }
+
+        /**
+         * Number of clauses and auxiliary selectors for 0 < k < n
+         */
+        static int size(int k, int n) {
+            return size(k + 1, n, new int[1]) + 1;
+        }
+
+        private static int size(int limit, int n, int[] outputs) {
+            if (n == 1) {
+                outputs[0] = 1;
+                return 0;
+            }
+            int l = n / 2;
+            int cost = size(limit, l, outputs);
+            int p = outputs[0];
+            cost += size(limit, n - l, outputs);
+            int q = outputs[0];
+            int r = Math.min(p + q, limit);
+            cost += r;
+            for (int i = 0; i <= p; i++) {
+                for (int j = 0; j <= q; j++) {
+                    if (i + j > 0 && i + j <= r) {
+                        cost++;
+                    }
+                }
+            }
+            outputs[0] = r;
+            return cost;
+        }
+    }
+
+    /**
+     * Efficient CNF Encoding for Selecting 1 from N Objects by Will Klieber and Gihwon Kwon
+     */
+    public static class Commander {
+
+        private static final int GROUP_SIZE = 3;
+
+        private static final int PAIRWISE_THRESHOLD = 6;
+
+        public static List<Node> atMostOne(List<? extends Variable> bits) {
+            if (bits.size() <= PAIRWISE_THRESHOLD) {
+                return Pairwise.atMostOne(bits);
+            }
+            List<Node> clauses = new ArrayList<>();
+            List<Selector> commanders = new ArrayList<>();
+            for (int start = 0; start < bits.size(); start += GROUP_SIZE) {
+                List<? extends Variable> group = bits.subList(start, Math.min(start + GROUP_SIZE, bits.size()));
+                Selector commander = new Selector();
+                commanders.add(commander);
+                clauses.addAll(Pairwise.atMostOne(group));
+                for (Variable bit : group) {
+                    clauses.add(new Impl(bit, commander));
+                }
+            }
+            clauses.addAll(atMostOne(commanders));
+            return clauses;
+        }
+
+        /**
+         * Number of clauses and auxiliary selectors
+         */
+        static int size(int n) {
+            if (n <= PAIRWISE_THRESHOLD) {
+                return Pairwise.size(n);
+            }
+            int groups = (n + GROUP_SIZE - 1) / GROUP_SIZE;
+            int cost = groups;
+            for (int start = 0; start < n; start += GROUP_SIZE) {
+                int size = Math.min(GROUP_SIZE, n - start);
+                cost += Pairwise.size(size) + size;
+            }
+            return cost + size(groups);
+        }
     }
 
     /**
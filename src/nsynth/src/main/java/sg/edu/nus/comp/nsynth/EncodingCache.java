@@ -0,0 +1,128 @@
+package sg.edu.nus.comp.nsynth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import sg.edu.nus.comp.nsynth.TreeBoundedEncoder.EncodingInfo;
+import sg.edu.nus.comp.nsynth.ast.Expression;
+import sg.edu.nus.comp.nsynth.ast.Node;
+import sg.edu.nus.comp.nsynth.ast.Type;
+import sg.edu.nus.comp.nsynth.ast.Variable;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * LRU cache of location encodings keyed by location, repair shape, component multiset and encoder options.
+ * Encodings are shared between repair calls, so they must not be modified.
+ * Location is a part of the key, because selectors of an encoding must not be shared between locations of one query.
+ */
+public class EncodingCache {
+
+    private final Cache<Key, Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo>> encodings;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public EncodingCache(int capacity) {
+        this.encodings = CacheBuilder.newBuilder().maximumSize(capacity).build();
+    }
+
+    public Triple<Variable, Pair<List<Node>, List<Node>>, EncodingInfo> encode(TreeBoundedEncoder encoder,
+                                                                               AngelixLocation loc,
+                                                                               RepairShape shape,
+                                                                               Multiset<Node> components) {
+        Key key = new Key(loc, shape, components, encoder.isSymmetryBreaking());
+        requests.incrementAndGet();
+        try {
+            return encodings.get(key, () -> {
+                misses.incrementAndGet();
+                return encoder.encode(shape, components);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public long getHits() {
+        return requests.get() - misses.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        encodings.invalidateAll();
+    }
+
+    /**
+     * Canonical description of an encoding problem: expressions are represented by their (hash-consed) semantics
+     */
+    private static class Key {
+        private final AngelixLocation loc;
+        private final Node original;
+        private final SynthesisLevel level;
+        private final List<Node> forbidden;
+        private final Type outputType;
+        private final Multiset<Node> components;
+        private final boolean symmetryBreaking;
+        private final int hash;
+
+        Key(AngelixLocation loc, RepairShape shape, Multiset<Node> components, boolean symmetryBreaking) {
+            this.loc = loc;
+            this.original = shape.getOriginal().getSemantics();
+            this.level = shape.getLevel();
+            this.forbidden = ImmutableList.copyOf(shape.getForbidden().stream()
+                    .map(Expression::getSemantics).collect(Collectors.toList()));
+            this.outputType = shape.getOutputType();
+            this.components = ImmutableMultiset.copyOf(components);
+            this.symmetryBreaking = symmetryBreaking;
+            this.hash = new HashCodeBuilder(17, 31).
+                    append(loc).
+                    append(original).
+                    append(level).
+                    append(forbidden).
+                    append(outputType).
+                    append(this.components).
+                    append(symmetryBreaking).
+                    toHashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            if (obj == this)
+                return true;
+
+            Key rhs = (Key) obj;
+            return hash == rhs.hash && new EqualsBuilder().
+                    append(loc, rhs.loc).
+                    append(original, rhs.original).
+                    append(level, rhs.level).
+                    append(forbidden, rhs.forbidden).
+                    append(outputType, rhs.outputType).
+                    append(components, rhs.components).
+                    append(symmetryBreaking, rhs.symmetryBreaking).
+                    isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
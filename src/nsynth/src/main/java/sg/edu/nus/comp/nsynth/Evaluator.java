@@ -0,0 +1,345 @@
+package sg.edu.nus.comp.nsynth;
+
+import sg.edu.nus.comp.nsynth.ast.*;
+import sg.edu.nus.comp.nsynth.ast.theory.*;
+
+import java.util.*;
+
+/**
+ * Concrete evaluator compiled from a node. Variables are read from an int array indexed
+ * in the order given at compilation, booleans are represented as 0 and 1.
+ * Integer division follows SMT-LIB (Euclidean) semantics. Unlike the unbounded integers of the encoding,
+ * values are 32-bit, so division by zero and overflow throw ArithmeticException.
+ */
+public class Evaluator {
+
+    @FunctionalInterface
+    private interface Op {
+        int apply(int[] env);
+    }
+
+    private final Op op;
+    private final Type type;
+    private final List<Variable> variables;
+
+    // positions of variables in context tables, tables are compared by identity
+    private final Map<List<? extends Variable>, int[]> positions = new IdentityHashMap<>();
+
+    private Evaluator(Op op, Type type, List<Variable> variables) {
+        this.op = op;
+        this.type = type;
+        this.variables = variables;
+    }
+
+    public static Evaluator compile(Node node, List<? extends Variable> variables) {
+        Map<Variable, Integer> slots = new HashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            slots.put(variables.get(i), i);
+        }
+        CompilationVisitor visitor = new CompilationVisitor(slots);
+        node.accept(visitor);
+        return new Evaluator(visitor.getOp(), TypeInference.typeOf(node), new ArrayList<>(variables));
+    }
+
+    /**
+     * Compiles node over all its program variables
+     */
+    public static Evaluator compile(Node node) {
+        List<ProgramVariable> variables = new ArrayList<>(new LinkedHashSet<>(Traverse.collectByType(node, ProgramVariable.class)));
+        return compile(node, variables);
+    }
+
+    public List<Variable> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @param env values of variables in the order of getVariables()
+     */
+    public int evaluate(int[] env) {
+        return op.apply(env);
+    }
+
+    /**
+     * @return empty if some variable is not assigned
+     */
+    public Optional<Constant> evaluate(Map<? extends Variable, ? extends Constant> assignment) {
+        int[] env = new int[variables.size()];
+        if (!fill(env, assignment)) {
+            return Optional.empty();
+        }
+        return Optional.of(toConstant(evaluate(env)));
+    }
+
+    /**
+     * Fills environment from assignment without allocating
+     * @return false if some variable is not assigned
+     */
+    public boolean fill(int[] env, Map<? extends Variable, ? extends Constant> assignment) {
+        for (int i = 0; i < variables.size(); i++) {
+            Constant value = assignment.get(variables.get(i));
+            if (value == null) {
+                return false;
+            }
+            env[i] = toInt(value);
+        }
+        return true;
+    }
+
+    /**
+     * Fills environment from context values without allocating
+     * @param values values[i] is the value of table.get(i)
+     * @return false if some variable is not in the table
+     */
+    public boolean fill(int[] env, List<? extends Variable> table, int[] values) {
+        int[] position = positions.computeIfAbsent(table, this::positionsIn);
+        for (int i = 0; i < position.length; i++) {
+            if (position[i] < 0) {
+                return false;
+            }
+            env[i] = values[position[i]];
+        }
+        return true;
+    }
+
+    private int[] positionsIn(List<? extends Variable> table) {
+        int[] position = new int[variables.size()];
+        for (int i = 0; i < variables.size(); i++) {
+            position[i] = table.indexOf(variables.get(i));
+        }
+        return position;
+    }
+
+    public Constant toConstant(int value) {
+        if (type.equals(BoolType.TYPE)) {
+            return BoolConst.of(value != 0);
+        }
+        return IntConst.of(value);
+    }
+
+    public static int toInt(Constant constant) {
+        if (constant instanceof BoolConst) {
+            return ((BoolConst) constant).getValue() ? 1 : 0;
+        }
+        return ((IntConst) constant).getValue();
+    }
+
+    private static int div(int left, int right) {
+        if (right == 0) {
+            throw new ArithmeticException("division by zero");
+        }
+        if (left == Integer.MIN_VALUE && right == -1) {
+            throw new ArithmeticException("integer overflow");
+        }
+        int quotient = left / right;
+        if (left % right < 0) {
+            quotient = right > 0 ? quotient - 1 : quotient + 1;
+        }
+        return quotient;
+    }
+
+    private static class CompilationVisitor implements BottomUpVisitor {
+
+        private Stack<Op> ops;
+        private Map<Variable, Integer> slots;
+
+        CompilationVisitor(Map<Variable, Integer> slots) {
+            this.slots = slots;
+            this.ops = new Stack<>();
+        }
+
+        Op getOp() {
+            assert ops.size() == 1;
+            return ops.peek();
+        }
+
+        private void processVariable(Variable variable) {
+            if (!slots.containsKey(variable)) {
+                throw new IllegalArgumentException("unbound variable " + variable);
+            }
+            int slot = slots.get(variable);
+            ops.push(env -> env[slot]);
+        }
+
+        @Override
+        public void visit(ProgramVariable programVariable) {
+            processVariable(programVariable);
+        }
+
+        @Override
+        public void visit(UIFApplication UIFApplication) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void visit(Equal equal) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) == right.apply(env) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(NotEqual notEqual) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) != right.apply(env) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(StatementInstance statementInstance) {
+            processVariable(statementInstance);
+        }
+
+        @Override
+        public void visit(Add add) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> Math.addExact(left.apply(env), right.apply(env)));
+        }
+
+        @Override
+        public void visit(Sub sub) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> Math.subtractExact(left.apply(env), right.apply(env)));
+        }
+
+        @Override
+        public void visit(Mult mult) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> Math.multiplyExact(left.apply(env), right.apply(env)));
+        }
+
+        @Override
+        public void visit(Div div) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> div(left.apply(env), right.apply(env)));
+        }
+
+        @Override
+        public void visit(And and) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) != 0 && right.apply(env) != 0 ? 1 : 0);
+        }
+
+        @Override
+        public void visit(Or or) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) != 0 || right.apply(env) != 0 ? 1 : 0);
+        }
+
+        @Override
+        public void visit(Iff iff) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> (left.apply(env) != 0) == (right.apply(env) != 0) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(Impl impl) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) == 0 || right.apply(env) != 0 ? 1 : 0);
+        }
+
+        @Override
+        public void visit(Greater greater) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) > right.apply(env) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(Less less) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) < right.apply(env) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(GreaterOrEqual greaterOrEqual) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) >= right.apply(env) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(LessOrEqual lessOrEqual) {
+            Op right = ops.pop();
+            Op left = ops.pop();
+            ops.push(env -> left.apply(env) <= right.apply(env) ? 1 : 0);
+        }
+
+        @Override
+        public void visit(Minus minus) {
+            Op arg = ops.pop();
+            ops.push(env -> Math.negateExact(arg.apply(env)));
+        }
+
+        @Override
+        public void visit(Not not) {
+            Op arg = ops.pop();
+            ops.push(env -> arg.apply(env) == 0 ? 1 : 0);
+        }
+
+        @Override
+        public void visit(IntConst intConst) {
+            int value = intConst.getValue();
+            ops.push(env -> value);
+        }
+
+        @Override
+        public void visit(BoolConst boolConst) {
+            int value = boolConst.getValue() ? 1 : 0;
+            ops.push(env -> value);
+        }
+
+        @Override
+        public void visit(TestInstance testInstance) {
+            processVariable(testInstance);
+        }
+
+        @Override
+        public void visit(Parameter parameter) {
+            processVariable(parameter);
+        }
+
+        @Override
+        public void visit(Hole hole) {
+            processVariable(hole);
+        }
+
+        @Override
+        public void visit(ITE ite) {
+            Op elseBranch = ops.pop();
+            Op thenBranch = ops.pop();
+            Op condition = ops.pop();
+            ops.push(env -> condition.apply(env) != 0 ? thenBranch.apply(env) : elseBranch.apply(env));
+        }
+
+        @Override
+        public void visit(Selector selector) {
+            processVariable(selector);
+        }
+
+        @Override
+        public void visit(BranchOutput branchOutput) {
+            processVariable(branchOutput);
+        }
+
+        @Override
+        public void visit(ExpressionOutput expressionOutput) {
+            processVariable(expressionOutput);
+        }
+
+        @Override
+        public void visit(ExecutionInstance executionInstance) {
+            processVariable(executionInstance);
+        }
+    }
+
+}
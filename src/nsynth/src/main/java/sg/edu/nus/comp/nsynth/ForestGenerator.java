@@ -0,0 +1,266 @@
+package sg.edu.nus.comp.nsynth;
+
+import sg.edu.nus.comp.nsynth.ast.*;
+import sg.edu.nus.comp.nsynth.ast.theory.*;
+
+import javax.json.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Generates angelic forests whose angelic values are produced by target expressions on random contexts,
+ * and extracted original expressions in the format of Main. The same seed and settings give the same output.
+ */
+public class ForestGenerator {
+
+    private static final int MAX_ATTEMPTS = 1000;
+
+    private static final Map<Class<? extends Node>, String> smtOperators = new HashMap<>();
+
+    static {
+        smtOperators.put(Add.class, "+");
+        smtOperators.put(Sub.class, "-");
+        smtOperators.put(Mult.class, "*");
+        smtOperators.put(Div.class, "/");
+        smtOperators.put(Greater.class, ">");
+        smtOperators.put(GreaterOrEqual.class, ">=");
+        smtOperators.put(Less.class, "<");
+        smtOperators.put(LessOrEqual.class, "<=");
+        smtOperators.put(Equal.class, "=");
+        smtOperators.put(NotEqual.class, "neq");
+        smtOperators.put(And.class, "and");
+        smtOperators.put(Or.class, "or");
+        smtOperators.put(Minus.class, "-");
+        smtOperators.put(Not.class, "not");
+        smtOperators.put(ITE.class, "ite");
+    }
+
+    private final long seed;
+
+    private int tests = 10;
+    private int pathsPerTest = 1;
+    private int instancesPerPath = 1;
+    private int minValue = -10;
+    private int maxValue = 10;
+
+    private final Map<AngelixLocation, Node> originals = new LinkedHashMap<>();
+    private final Map<AngelixLocation, Node> targets = new LinkedHashMap<>();
+    private final Set<ProgramVariable> variables = new LinkedHashSet<>();
+
+    public ForestGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public ForestGenerator setTests(int tests) {
+        this.tests = tests;
+        return this;
+    }
+
+    public ForestGenerator setPathsPerTest(int pathsPerTest) {
+        this.pathsPerTest = pathsPerTest;
+        return this;
+    }
+
+    public ForestGenerator setInstancesPerPath(int instancesPerPath) {
+        this.instancesPerPath = instancesPerPath;
+        return this;
+    }
+
+    /**
+     * Range of integer context values (inclusive)
+     */
+    public ForestGenerator setValueRange(int minValue, int maxValue) {
+        if (minValue > maxValue) {
+            throw new IllegalArgumentException("empty value range");
+        }
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        return this;
+    }
+
+    /**
+     * Context variables in addition to the variables of original and target expressions
+     */
+    public ForestGenerator addVariables(Collection<ProgramVariable> variables) {
+        this.variables.addAll(variables);
+        return this;
+    }
+
+    /**
+     * @param original expression extracted from the buggy program
+     * @param target expression that produces angelic values
+     */
+    public ForestGenerator addLocation(AngelixLocation loc, Node original, Node target) {
+        if (!TypeInference.typeOf(original).equals(TypeInference.typeOf(target))) {
+            throw new IllegalArgumentException("original and target types do not match");
+        }
+        originals.put(loc, original);
+        targets.put(loc, target);
+        return this;
+    }
+
+    private List<ProgramVariable> contextVariables() {
+        Set<ProgramVariable> context = new LinkedHashSet<>(variables);
+        for (AngelixLocation loc : targets.keySet()) {
+            context.addAll(Traverse.collectByType(originals.get(loc), ProgramVariable.class));
+            context.addAll(Traverse.collectByType(targets.get(loc), ProgramVariable.class));
+        }
+        return new ArrayList<>(context);
+    }
+
+    /**
+     * @return angelic forest in the format of AngelicForest.parse
+     */
+    public JsonObject generate() {
+        Random random = new Random(seed);
+        List<ProgramVariable> context = contextVariables();
+        Map<AngelixLocation, Evaluator> evaluators = new LinkedHashMap<>();
+        for (Map.Entry<AngelixLocation, Node> entry : targets.entrySet()) {
+            evaluators.put(entry.getKey(), Evaluator.compile(entry.getValue(), context));
+        }
+        JsonObjectBuilder forest = Json.createObjectBuilder();
+        for (int test = 0; test < tests; test++) {
+            JsonArrayBuilder paths = Json.createArrayBuilder();
+            for (int path = 0; path < pathsPerTest; path++) {
+                JsonArrayBuilder values = Json.createArrayBuilder();
+                for (Map.Entry<AngelixLocation, Evaluator> entry : evaluators.entrySet()) {
+                    for (int instance = 0; instance < instancesPerPath; instance++) {
+                        values.add(generateValue(random, context, entry.getKey(), entry.getValue(), instance));
+                    }
+                }
+                paths.add(values);
+            }
+            forest.add("t" + test, paths);
+        }
+        return forest.build();
+    }
+
+    private JsonObject generateValue(Random random, List<ProgramVariable> context, AngelixLocation loc,
+                                     Evaluator target, int instance) {
+        int[] env = new int[context.size()];
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            for (int i = 0; i < env.length; i++) {
+                if (context.get(i).getType().equals(BoolType.TYPE)) {
+                    env[i] = random.nextBoolean() ? 1 : 0;
+                } else {
+                    env[i] = minValue + random.nextInt(maxValue - minValue + 1);
+                }
+            }
+            int angelic;
+            try {
+                angelic = target.evaluate(env);
+            } catch (ArithmeticException e) {
+                continue;
+            }
+            JsonArrayBuilder contextJson = Json.createArrayBuilder();
+            for (int i = 0; i < env.length; i++) {
+                ProgramVariable variable = context.get(i);
+                Constant value = variable.getType().equals(BoolType.TYPE) ? BoolConst.of(env[i] != 0) : IntConst.of(env[i]);
+                contextJson.add(addValue(Json.createObjectBuilder(), value).add("name", variable.getName()));
+            }
+            return Json.createObjectBuilder()
+                    .add("value", addValue(Json.createObjectBuilder(), target.toConstant(angelic)).add("name", "angelic"))
+                    .add("instId", instance)
+                    .add("expression", loc.toString())
+                    .add("context", contextJson)
+                    .build();
+        }
+        throw new RuntimeException("failed to generate context for " + loc);
+    }
+
+    private static JsonObjectBuilder addValue(JsonObjectBuilder builder, Constant value) {
+        if (value instanceof BoolConst) {
+            return builder.add("value", ((BoolConst) value).getValue());
+        }
+        return builder.add("value", ((IntConst) value).getValue());
+    }
+
+    public AngelicForest generateForest() {
+        return AngelicForest.parse(new ByteArrayInputStream(generate().toString().getBytes(Charset.forName("UTF-8"))));
+    }
+
+    /**
+     * Writes angelic forest file and original expressions as extractedDir/LOCATION.smt2
+     */
+    public void write(Path forestFile, Path extractedDir) throws IOException {
+        try (OutputStream os = Files.newOutputStream(forestFile); JsonWriter writer = Json.createWriter(os)) {
+            writer.writeObject(generate());
+        }
+        Files.createDirectories(extractedDir);
+        for (Map.Entry<AngelixLocation, Node> entry : originals.entrySet()) {
+            Files.write(extractedDir.resolve(entry.getKey() + ".smt2"),
+                    Collections.singletonList("(assert " + toSmt(entry.getValue()) + ")"),
+                    Charset.forName("UTF-8"));
+        }
+    }
+
+    /**
+     * SMT-LIB representation that is accepted by ExpressionConverter
+     */
+    public static String toSmt(Node node) {
+        if (node instanceof ProgramVariable) {
+            return ((ProgramVariable) node).getName();
+        }
+        if (node instanceof IntConst) {
+            int value = ((IntConst) node).getValue();
+            return value < 0 ? "(- " + (-(long) value) + ")" : Integer.toString(value);
+        }
+        if (node instanceof BoolConst) {
+            return ((BoolConst) node).getValue() ? "true" : "false";
+        }
+        String operator = smtOperators.get(node.getClass());
+        if (operator == null) {
+            throw new UnsupportedOperationException("unsupported node " + node);
+        }
+        StringBuilder smt = new StringBuilder("(").append(operator);
+        for (Node arg : ((Application) node).getArgs()) {
+            smt.append(' ').append(toSmt(arg));
+        }
+        return smt.append(')').toString();
+    }
+
+    /**
+     * Usage: ForestGenerator ORIGINAL TARGET OUTPUT_DIR [--tests N] [--paths N] [--instances N] [--locations N]
+     *                        [--variables x,y] [--seed N]
+     * where ORIGINAL and TARGET are SMT-LIB expressions over integer variables, e.g. "(+ x y)".
+     * Writes OUTPUT_DIR/angelic-forest.json and OUTPUT_DIR/extracted/LOCATION.smt2
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ForestGenerator ORIGINAL TARGET OUTPUT_DIR [--tests N] [--paths N] " +
+                    "[--instances N] [--locations N] [--variables x,y] [--seed N]");
+            System.exit(1);
+        }
+        Node original = ExpressionConverter.convert(SMTParser.parse("(assert " + args[0] + ")")).getSemantics();
+        Node target = ExpressionConverter.convert(SMTParser.parse("(assert " + args[1] + ")")).getSemantics();
+        Path output = Paths.get(args[2]);
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        ForestGenerator generator = new ForestGenerator(Long.parseLong(options.getOrDefault("--seed", "0")))
+                .setTests(Integer.parseInt(options.getOrDefault("--tests", "10")))
+                .setPathsPerTest(Integer.parseInt(options.getOrDefault("--paths", "1")))
+                .setInstancesPerPath(Integer.parseInt(options.getOrDefault("--instances", "1")));
+        if (options.containsKey("--variables")) {
+            List<ProgramVariable> variables = new ArrayList<>();
+            for (String name : options.get("--variables").split(",")) {
+                variables.add(ProgramVariable.mkInt(name));
+            }
+            generator.addVariables(variables);
+        }
+        int locations = Integer.parseInt(options.getOrDefault("--locations", "1"));
+        for (int i = 1; i <= locations; i++) {
+            generator.addLocation(new AngelixLocation(i, 0, i, 1), original, target);
+        }
+        Files.createDirectories(output);
+        generator.write(output.resolve("angelic-forest.json"), output.resolve("extracted"));
+    }
+}
@@ -4,15 +4,13 @@ import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 import fj.P;
 import org.apache.commons.lang3.tuple.Pair;
-import org.smtlib.IExpr;
 import sg.edu.nus.comp.nsynth.ast.*;
 
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import javax.json.JsonString;
+import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -24,18 +22,89 @@ import java.util.stream.Collectors;
  * Created by Sergey Mechtaev on 19/7/2016.
  */
 public class Main {
+    private static final int ENCODING_CACHE_CAPACITY = 1024;
+
     public static void main(String[] args) {
+        AngelixSynthesis synthesizer = new AngelixSynthesis();
+        synthesizer.enableParallelEncoding();
+        synthesizer.enableEncodingCache(ENCODING_CACHE_CAPACITY);
+
+        if (args.length == 1 && args[0].equals("--server")) {
+            serve(synthesizer, new BufferedReader(new InputStreamReader(System.in, Charset.forName("UTF-8"))), System.out);
+            return;
+        }
+
         String angelicForestFilePath = args[0];
         String extractedDirPath = args[1];
         String outputFilePath = args[2];
         String configFile = args[3]; //NODE: it is used only for synthesis level in this synthesizer
 
+        System.out.println(synthesize(synthesizer, angelicForestFilePath, extractedDirPath, outputFilePath, configFile));
+    }
+
+    /**
+     * Server mode: reads one job per line as a JSON object with the same fields as the command line arguments
+     * (angelicForest, extracted, output, config) and answers each job with a single status line.
+     * The synthesizer (and therefore the Z3 context) is kept alive across jobs.
+     */
+    private static void serve(AngelixSynthesis synthesizer, BufferedReader in, PrintStream out) {
+        String line;
+        try {
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String status;
+                try {
+                    JsonObject job = Json.createReader(new StringReader(line)).readObject();
+                    status = synthesize(synthesizer,
+                            job.getString("angelicForest"),
+                            job.getString("extracted"),
+                            job.getString("output"),
+                            job.getString("config"));
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    status = "ERROR";
+                }
+                out.println(status);
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Metrics of the job are written next to the output file (with .metrics.json suffix)
+     * @return SUCCESS (patch is written to output file), FAIL or TIMEOUT (solverTimeout is exceeded)
+     */
+    private static String synthesize(AngelixSynthesis synthesizer,
+                                     String angelicForestFilePath,
+                                     String extractedDirPath,
+                                     String outputFilePath,
+                                     String configFile) {
+        Metrics metrics = new Metrics();
+        synthesizer.setMetrics(metrics);
+        try {
+            return metrics.time("total", () ->
+                    synthesize(synthesizer, angelicForestFilePath, extractedDirPath, outputFilePath, configFile, metrics));
+        } finally {
+            metrics.write(Paths.get(outputFilePath + ".metrics.json"));
+        }
+    }
+
+    private static String synthesize(AngelixSynthesis synthesizer,
+                                     String angelicForestFilePath,
+                                     String extractedDirPath,
+                                     String outputFilePath,
+                                     String configFile,
+                                     Metrics metrics) {
         AngelicForest angelicForest = null;
 
         File angelicForestFile = new File(angelicForestFilePath);
         try {
             FileInputStream fis = new FileInputStream(angelicForestFile);
-            angelicForest = AngelicForest.parse(fis);
+            angelicForest = metrics.time("parse", () -> AngelicForest.parse(fis));
             fis.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -52,19 +121,60 @@ public class Main {
             AngelixLocation loc = AngelixLocation.parse(name);
             Expression expression = null;
             try {
-                IExpr expr = SMTParser.parse(new String(Files.readAllBytes(smtFile.toPath())));
-                expression = ExpressionConverter.convert(expr);
+                String smt = new String(Files.readAllBytes(smtFile.toPath()));
+                expression = metrics.time("parse", () -> ExpressionConverter.convert(SMTParser.parse(smt)));
             } catch (IOException e) {
                 e.printStackTrace();
             }
             original.put(loc, expression);
         }
 
-        SynthesisLevel level = extractSynthesisLevel(configFile);
-
-        Pair<AngelicForest, Map<AngelixLocation, Expression>> corrected = TypeCorrector.correct(angelicForest, original);
+        JsonObject config = readConfig(configFile);
+        List<SynthesisLevel> levels = extractSynthesisLevels(config);
+        if (config.getBoolean("cegis", false)) {
+            synthesizer.enableCegis();
+        } else {
+            synthesizer.disableCegis();
+        }
+        // one argument order of commutative components
+        if (config.getBoolean("symmetryBreaking", false)) {
+            synthesizer.enableSymmetryBreaking();
+        } else {
+            synthesizer.disableSymmetryBreaking();
+        }
+        // one encoding and solver session for nested levels instead of racing levels
+        if (config.getBoolean("incrementalLevels", false)) {
+            synthesizer.disablePortfolio();
+            synthesizer.enableIncrementalLevels();
+        } else if (config.getBoolean("portfolio", false)) {
+            synthesizer.enablePortfolio();
+            synthesizer.disableIncrementalLevels();
+        } else {
+            synthesizer.disablePortfolio();
+            synthesizer.disableIncrementalLevels();
+        }
+        // keep encodings and solver sessions for the next job if it only adds tests
+        if (config.getBoolean("incrementalForest", false)) {
+            synthesizer.enableIncrementalForest();
+        } else {
+            synthesizer.disableIncrementalForest();
+        }
+        if (config.containsKey("solverTimeout")) {
+            synthesizer.enableTimeout(config.getInt("solverTimeout"));
+        } else {
+            synthesizer.disableTimeout();
+        }
+        // fumalik (bounded Fu-Malik) or a MaxSAT engine of Z3 Optimize for weighted distance to original
+        String maxsat = config.getString("maxsat", "fumalik");
+        if (maxsat.equals("fumalik")) {
+            synthesizer.disableWeightedMaxsat();
+        } else {
+            synthesizer.enableWeightedMaxsat(maxsat);
+        }
 
-        AngelixSynthesis synthesizer = new AngelixSynthesis();
+        AngelicForest parsedAngelicForest = angelicForest;
+        Pair<AngelicForest, Map<AngelixLocation, Expression>> corrected =
+                metrics.time("typeCorrection", () -> TypeCorrector.correct(parsedAngelicForest, original));
 
         AngelicForest correctedAngelicForest = corrected.getLeft();
         Map<AngelixLocation, Expression> correctedOriginal = corrected.getRight();
@@ -77,16 +187,36 @@ public class Main {
         System.err.println(correctedOriginal.toString());
         System.err.println(correctedAngelicForest.toString());
 
-        Optional<Map<AngelixLocation, Node>> result =
-                synthesizer.repair(correctedOriginal, correctedAngelicForest, components, level);
+        Optional<ResultCache> resultCache = Optional.empty();
+        String fingerprint = null;
+        if (config.containsKey("resultCache")) {
+            resultCache = Optional.of(new ResultCache(Paths.get(config.getString("resultCache"))));
+            fingerprint = ResultCache.fingerprint(correctedOriginal, correctedAngelicForest, levels,
+                    synthesizer.getSettings());
+            Optional<Pair<String, List<String>>> cached = resultCache.get().lookup(fingerprint);
+            if (cached.isPresent()) {
+                System.err.println("Cached result: " + fingerprint);
+                if (cached.get().getLeft().equals("SUCCESS")) {
+                    writePatch(outputFilePath, cached.get().getRight());
+                }
+                return cached.get().getLeft();
+            }
+        }
+
+        Optional<Map<AngelixLocation, Node>> result;
+        try {
+            result = synthesizer.repair(correctedOriginal, correctedAngelicForest, components, levels);
+        } catch (SolverTimeoutException e) {
+            System.err.println("Synthesis timeout: " + e.getMessage());
+            return "TIMEOUT";
+        }
 
         if (result.isPresent()) {
-            System.out.println("SUCCESS");
             List<String> patch = new ArrayList<>();
             for (AngelixLocation loc : correctedAngelicForest.getAllLocations()) {
                 Node orig = correctedOriginal.get(loc).getSemantics();
                 Node fixed = result.get().get(loc);
-                Node simplified = Simplifier.simplify(fixed);
+                Node simplified = metrics.time("simplification", () -> Simplifier.simplify(fixed));
                 System.err.println("Location: " + loc);
                 System.err.println("Original: " + orig);
                 System.err.println("Fixed: " + fixed);
@@ -96,33 +226,65 @@ public class Main {
                     patch.add(orig.toString());
                     patch.add(simplified.toString());
                 }
-                Path file = Paths.get(outputFilePath);
-                try {
-                    Files.write(file, patch, Charset.forName("UTF-8"));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
             }
+            writePatch(outputFilePath, patch);
+            if (resultCache.isPresent()) {
+                resultCache.get().store(fingerprint, "SUCCESS", patch);
+            }
+            return "SUCCESS";
         } else {
-            System.out.println("FAIL");
+            if (resultCache.isPresent()) {
+                resultCache.get().store(fingerprint, "FAIL", Collections.emptyList());
+            }
+            return "FAIL";
         }
     }
 
-    /**
-     * This is only for backward compatibility
-     */
-    private static SynthesisLevel extractSynthesisLevel(String configFile) {
+    private static void writePatch(String outputFilePath, List<String> patch) {
+        Path file = Paths.get(outputFilePath);
+        try {
+            Files.write(file, patch, Charset.forName("UTF-8"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static JsonObject readConfig(String configFile) {
         File file = new File(configFile);
-        String levelStr = null;
+        JsonObject configObj = null;
         try {
             FileInputStream fis = new FileInputStream(file);
             JsonReader reader = Json.createReader(fis);
-            JsonObject forestObj = reader.readObject();
-            levelStr = forestObj.getString("componentLevel");
+            configObj = reader.readObject();
             fis.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return configObj;
+    }
+
+    /**
+     * Levels in priority order: "componentLevels" if present (unsupported levels are skipped), otherwise "componentLevel"
+     */
+    private static List<SynthesisLevel> extractSynthesisLevels(JsonObject configObj) {
+        if (!configObj.containsKey("componentLevels")) {
+            return Collections.singletonList(toSynthesisLevel(configObj.getString("componentLevel")));
+        }
+        List<SynthesisLevel> levels = new ArrayList<>();
+        for (JsonString levelStr : configObj.getJsonArray("componentLevels").getValuesAs(JsonString.class)) {
+            try {
+                levels.add(toSynthesisLevel(levelStr.getString()));
+            } catch (UnsupportedOperationException e) {
+                System.err.println("Unsupported component level: " + levelStr.getString());
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * This is only for backward compatibility
+     */
+    private static SynthesisLevel toSynthesisLevel(String levelStr) {
         if (levelStr.equals("alternatives")) {
             return SynthesisLevel.OPERATORS;
         }
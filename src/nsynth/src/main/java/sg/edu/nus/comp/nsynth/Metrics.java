@@ -0,0 +1,121 @@
+package sg.edu.nus.comp.nsynth;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Phase timings, counters and per-iteration series of a synthesis job. Can be updated from several threads.
+ */
+public class Metrics {
+
+    // phase -> nanoseconds
+    private final ConcurrentMap<String, LongAdder> times = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentMap<String, List<Long>> series = new ConcurrentSkipListMap<>();
+
+    public <T> T time(String phase, Supplier<T> computation) {
+        long start = System.nanoTime();
+        try {
+            return computation.get();
+        } finally {
+            addTime(phase, System.nanoTime() - start);
+        }
+    }
+
+    public void time(String phase, Runnable computation) {
+        long start = System.nanoTime();
+        try {
+            computation.run();
+        } finally {
+            addTime(phase, System.nanoTime() - start);
+        }
+    }
+
+    public void addTime(String phase, long nanoseconds) {
+        times.computeIfAbsent(phase, p -> new LongAdder()).add(nanoseconds);
+    }
+
+    public void count(String name, long value) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Appends value to series (e.g. time of each MaxSAT iteration)
+     */
+    public void record(String name, long value) {
+        series.computeIfAbsent(name, n -> Collections.synchronizedList(new ArrayList<>())).add(value);
+    }
+
+    public long getTimeMillis(String phase) {
+        LongAdder time = times.get(phase);
+        return time == null ? 0 : TimeUnit.NANOSECONDS.toMillis(time.sum());
+    }
+
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public List<Long> getSeries(String name) {
+        List<Long> values = series.get(name);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        synchronized (values) {
+            return new ArrayList<>(values);
+        }
+    }
+
+    /**
+     * Times are in milliseconds
+     */
+    public JsonObject toJson() {
+        JsonObjectBuilder timesJson = Json.createObjectBuilder();
+        for (Map.Entry<String, LongAdder> entry : times.entrySet()) {
+            timesJson.add(entry.getKey(), entry.getValue().sum() / 1e6);
+        }
+        JsonObjectBuilder countersJson = Json.createObjectBuilder();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            countersJson.add(entry.getKey(), entry.getValue().sum());
+        }
+        JsonObjectBuilder seriesJson = Json.createObjectBuilder();
+        for (String name : series.keySet()) {
+            JsonArrayBuilder values = Json.createArrayBuilder();
+            for (long value : getSeries(name)) {
+                values.add(value);
+            }
+            seriesJson.add(name, values);
+        }
+        return Json.createObjectBuilder()
+                .add("times", timesJson)
+                .add("counters", countersJson)
+                .add("series", seriesJson)
+                .build();
+    }
+
+    public void write(Path file) {
+        try (OutputStream os = Files.newOutputStream(file); JsonWriter writer = Json.createWriter(os)) {
+            writer.writeObject(toJson());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * This is a simple implementation of single-line patch synthesis used for testing
@@ -48,9 +49,12 @@ public class PatchSynthesis {
         Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding = encoder.encode(shape, components);
 
         List<Node> hard = new ArrayList<>();
+        // clauses over selectors and parameters are the same for all tests
+        Map<Boolean, List<Node>> clauses = encoding.getMiddle().getLeft().stream()
+                .collect(Collectors.partitioningBy(Node::hasTestInstantiableVariables));
+        hard.addAll(clauses.get(false));
         for (TestCase test : testSuite) {
-            for (Node node : encoding.getMiddle().getLeft()) {
-                //FIXME: here we duplicate a lot of constraints:
+            for (Node node : clauses.get(true)) {
                 hard.add(node.instantiate(test));
             }
             hard.addAll(testToConstraint(test, encoding.getLeft()));
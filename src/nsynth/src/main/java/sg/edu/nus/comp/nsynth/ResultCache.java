@@ -0,0 +1,139 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import sg.edu.nus.comp.nsynth.ast.Expression;
+import sg.edu.nus.comp.nsynth.ast.ProgramVariable;
+import sg.edu.nus.comp.nsynth.ast.Type;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of synthesis results (status and patch lines) keyed by a fingerprint of the query.
+ * Each entry is a separate file named by the fingerprint, entries are written atomically,
+ * so the cache can be shared by concurrent runs.
+ */
+public class ResultCache {
+
+    private static final String FORMAT_VERSION = "2";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Path directory;
+
+    public ResultCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * SHA-256 of the canonical representation of original expressions, angelic forest, levels and solver settings
+     */
+    public static String fingerprint(Map<AngelixLocation, Expression> original,
+                                     AngelicForest angelicForest,
+                                     List<SynthesisLevel> levels,
+                                     List<Object> settings) {
+        StringBuilder query = new StringBuilder();
+        query.append("version ").append(FORMAT_VERSION).append('\n');
+        query.append("levels ").append(levels).append('\n');
+        query.append("settings ").append(settings).append('\n');
+
+        List<AngelixLocation> locations = new ArrayList<>(original.keySet());
+        locations.sort(Comparator.comparing(AngelixLocation::toString));
+        for (AngelixLocation loc : locations) {
+            query.append("original ").append(loc).append(' ').append(original.get(loc).getSemantics()).append('\n');
+        }
+
+        Map<AngelixTest, List<AngelicPath>> paths = angelicForest.getPaths();
+        List<AngelixTest> tests = new ArrayList<>(paths.keySet());
+        tests.sort(Comparator.comparing(AngelixTest::getName));
+        for (AngelixTest test : tests) {
+            query.append("test ").append(test.getName()).append(' ').append(typeName(test.getOutputType())).append('\n');
+            for (AngelicPath path : paths.get(test)) {
+                query.append("path\n");
+                appendPath(query, path);
+            }
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(query.toString().getBytes(UTF8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendPath(StringBuilder query, AngelicPath path) {
+        List<AngelixLocation> locations = new ArrayList<>(path.getLocations());
+        locations.sort(Comparator.comparing(AngelixLocation::toString));
+        for (AngelixLocation loc : locations) {
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < path.getInstanceCount(loc); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparing(i -> path.getInstance(loc, i)));
+            for (int i : order) {
+                query.append(loc).append(' ').append(path.getInstance(loc, i)).append(' ')
+                        .append(path.getAngelicValue(loc, i));
+                List<ProgramVariable> variables = path.getContextVariables(loc, i);
+                List<Integer> context = new ArrayList<>();
+                for (int j = 0; j < variables.size(); j++) {
+                    context.add(j);
+                }
+                context.sort(Comparator.comparing(j -> variables.get(j).getName()));
+                for (int j : context) {
+                    query.append(' ').append(variables.get(j).getName()).append(':').append(typeName(variables.get(j).getType()))
+                            .append('=').append(path.getContextValue(loc, i, j));
+                }
+                query.append('\n');
+            }
+        }
+    }
+
+    private static String typeName(Type type) {
+        return type.getClass().getSimpleName();
+    }
+
+    /**
+     * @return status and patch lines
+     */
+    public Optional<Pair<String, List<String>>> lookup(String fingerprint) {
+        Path entry = directory.resolve(fingerprint);
+        if (!Files.isRegularFile(entry)) {
+            return Optional.empty();
+        }
+        try {
+            List<String> lines = Files.readAllLines(entry, UTF8);
+            if (lines.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(new ImmutablePair<>(lines.get(0), new ArrayList<>(lines.subList(1, lines.size()))));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    public void store(String fingerprint, String status, List<String> patch) {
+        List<String> lines = new ArrayList<>();
+        lines.add(status);
+        lines.addAll(patch);
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, fingerprint, ".tmp");
+            Files.write(temporary, lines, UTF8);
+            Files.move(temporary, directory.resolve(fingerprint),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package sg.edu.nus.comp.nsynth;
+
+/**
+ * Solver query exceeded its time budget or was interrupted
+ */
+public class SolverTimeoutException extends RuntimeException {
+    public SolverTimeoutException(String reason) {
+        super(reason);
+    }
+}
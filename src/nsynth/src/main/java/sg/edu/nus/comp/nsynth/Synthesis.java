@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Created by Sergey Mechtaev on 19/7/2016.
@@ -30,9 +31,12 @@ public class Synthesis {
         Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding = encoder.encode(shape, components);
 
         List<Node> synthesisClauses = new ArrayList<>();
+        // clauses over selectors and parameters are the same for all tests
+        Map<Boolean, List<Node>> clauses = encoding.getMiddle().getLeft().stream()
+                .collect(Collectors.partitioningBy(Node::hasTestInstantiableVariables));
+        synthesisClauses.addAll(clauses.get(false));
         for (TestCase test : testSuite) {
-            for (Node node : encoding.getMiddle().getLeft()) {
-                //FIXME: here we duplicate a lot of constraints:
+            for (Node node : clauses.get(true)) {
                 synthesisClauses.add(node.instantiate(test));
             }
             synthesisClauses.addAll(testToConstraint(test, encoding.getLeft()));
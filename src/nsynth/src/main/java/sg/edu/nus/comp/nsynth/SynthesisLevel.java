@@ -10,5 +10,24 @@ package sg.edu.nus.comp.nsynth;
  *               a > 0 --> a > 0 || b > 0   (orig || new or orig && new for boolean)
  */
 public enum SynthesisLevel {
-    EMPTY, OPERATORS, LEAVES, SUBSTITUTION, CONDITIONAL
+    EMPTY, OPERATORS, LEAVES, SUBSTITUTION, CONDITIONAL;
+
+    /**
+     * @return search space of this level contains search space of other level,
+     * so encoding of this level can be restricted to other level
+     */
+    public boolean includes(SynthesisLevel other) {
+        if (this == other) {
+            return true;
+        }
+        switch (this) {
+            case OPERATORS:
+            case LEAVES:
+                return other == EMPTY;
+            case SUBSTITUTION:
+                return other != CONDITIONAL;
+            default:
+                return false;
+        }
+    }
 }
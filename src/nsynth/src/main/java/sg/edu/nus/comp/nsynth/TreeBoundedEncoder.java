@@ -26,6 +26,8 @@ public class TreeBoundedEncoder {
 
     private boolean uniqueUsage = true;
 
+    private boolean symmetryBreaking = false;
+
     private final static int SUBSTITUTION_SUBNODE_BOUND = 1;
     private final static int LOGIC_NODE_BOUND = 3;
     private final static int CONDITIONAL_COND_BOUND = 3;
@@ -33,28 +35,28 @@ public class TreeBoundedEncoder {
 
     protected class EncodingInfo {
         // branch values tree
-        private Map<Variable, List<Variable>> tree;
+        private final Map<Variable, List<Variable>> tree;
 
         // possible choices for each branch
-        private Map<Variable, List<Selector>> nodeChoices;
+        private final Map<Variable, List<Selector>> nodeChoices;
 
         // selected components
-        private Map<Selector, Node> selectedComponent;
+        private final Map<Selector, Node> selectedComponent;
 
         // branch is activated by any of these selectors
-        private Map<Variable, List<Selector>> branchDependencies;
+        private final Map<Variable, List<Selector>> branchDependencies;
 
         // selectors corresponding to the same component
-        private Map<Node, List<Selector>> componentUsage;
+        private final Map<Node, List<Selector>> componentUsage;
 
         // from forbidden program to corresponding selectors
         // list of lists because at each node there can be several matches that must be disjoined
-        private Map<Expression, List<List<Selector>>> forbiddenSelectors;
+        private final Map<Expression, List<List<Selector>>> forbiddenSelectors;
 
         //selectors corresponding to original program
-        private List<Selector> originalSelectors;
+        private final List<Selector> originalSelectors;
 
-        private List<Node> clauses;
+        private final List<Node> clauses;
 
         public EncodingInfo(Map<Variable, List<Variable>> tree,
                             Map<Variable, List<Selector>> nodeChoices,
@@ -64,14 +66,89 @@ public class TreeBoundedEncoder {
                             Map<Expression, List<List<Selector>>> forbiddenSelectors,
                             List<Selector> originalSelectors,
                             List<Node> clauses) {
-            this.tree = tree;
-            this.nodeChoices = nodeChoices;
-            this.selectedComponent = selectedComponent;
-            this.branchDependencies = branchDependencies;
-            this.componentUsage = componentUsage;
-            this.forbiddenSelectors = forbiddenSelectors;
-            this.originalSelectors = originalSelectors;
-            this.clauses = clauses;
+            this.tree = Collections.unmodifiableMap(tree);
+            this.nodeChoices = Collections.unmodifiableMap(nodeChoices);
+            this.selectedComponent = Collections.unmodifiableMap(selectedComponent);
+            this.branchDependencies = Collections.unmodifiableMap(branchDependencies);
+            this.componentUsage = Collections.unmodifiableMap(componentUsage);
+            this.forbiddenSelectors = Collections.unmodifiableMap(forbiddenSelectors);
+            this.originalSelectors = Collections.unmodifiableList(originalSelectors);
+            this.clauses = Collections.unmodifiableList(clauses);
+        }
+
+        public Map<Selector, Node> getSelectedComponent() {
+            return selectedComponent;
+        }
+    }
+
+    /**
+     * Encoding state shared by all branches of a shape. Branches write into it directly instead of
+     * merging the results of their subbranches, so each entry is stored once.
+     */
+    private class EncodingBuilder {
+        private final Map<Variable, List<Variable>> tree = new HashMap<>();
+        private final Map<Variable, List<Selector>> nodeChoices = new HashMap<>();
+        private final Map<Selector, Node> selectedComponent = new HashMap<>();
+        private final Map<Variable, List<Selector>> branchDependencies = new HashMap<>();
+        private final Map<Node, List<Selector>> componentUsage = new HashMap<>();
+        private final List<Selector> originalSelectors = new ArrayList<>();
+        private final List<Node> clauses = new ArrayList<>();
+
+        // creation order of encoded branches and selectors, to discard infeasible branches
+        private final List<Variable> branches = new ArrayList<>();
+        private final List<Selector> selectors = new ArrayList<>();
+
+        private void select(Selector selector, Node component) {
+            selectedComponent.put(selector, component);
+            selectors.add(selector);
+        }
+
+        private void use(Selector selector, Node component) {
+            componentUsage.computeIfAbsent(component, c -> new ArrayList<>()).add(selector);
+        }
+
+        private void addDependency(Variable branch, Selector selector) {
+            branchDependencies.computeIfAbsent(branch, b -> new ArrayList<>()).add(selector);
+        }
+
+        private void addBranch(Variable output, List<Variable> children, List<Selector> choices) {
+            tree.put(output, children);
+            nodeChoices.put(output, choices);
+            branches.add(output);
+        }
+
+        private int[] checkpoint() {
+            return new int[] { branches.size(), selectors.size(), originalSelectors.size(), clauses.size() };
+        }
+
+        /**
+         * Discard everything encoded after checkpoint
+         */
+        private void rollback(int[] checkpoint) {
+            List<Variable> discardedBranches = branches.subList(checkpoint[0], branches.size());
+            for (Variable branch : discardedBranches) {
+                tree.remove(branch);
+                nodeChoices.remove(branch);
+                branchDependencies.remove(branch);
+            }
+            discardedBranches.clear();
+            List<Selector> discardedSelectors = selectors.subList(checkpoint[1], selectors.size());
+            if (!discardedSelectors.isEmpty()) {
+                Set<Selector> discarded = new HashSet<>(discardedSelectors);
+                discarded.forEach(selectedComponent::remove);
+                componentUsage.values().removeIf(usage -> {
+                    usage.removeIf(discarded::contains);
+                    return usage.isEmpty();
+                });
+                discardedSelectors.clear();
+            }
+            originalSelectors.subList(checkpoint[2], originalSelectors.size()).clear();
+            clauses.subList(checkpoint[3], clauses.size()).clear();
+        }
+
+        private EncodingInfo build(Map<Expression, List<List<Selector>>> forbiddenSelectors) {
+            return new EncodingInfo(tree, nodeChoices, selectedComponent, branchDependencies, componentUsage,
+                    forbiddenSelectors, originalSelectors, clauses);
         }
     }
 
@@ -83,6 +160,22 @@ public class TreeBoundedEncoder {
         this.uniqueUsage = uniqueUsage;
     }
 
+    /**
+     * For commutative components with bounded subtrees of the same size, only allow argument orders
+     * in which the root component of the left argument precedes the root component of the right argument
+     */
+    public void enableSymmetryBreaking() {
+        symmetryBreaking = true;
+    }
+
+    public void disableSymmetryBreaking() {
+        symmetryBreaking = false;
+    }
+
+    public boolean isSymmetryBreaking() {
+        return symmetryBreaking;
+    }
+
     /**
      * @return output variable, synthesis constraints and encoding information
      */
@@ -93,31 +186,34 @@ public class TreeBoundedEncoder {
         Map<Expression, Expression> initialForbidden =
                 shape.getForbidden().stream().collect(Collectors.toMap(Function.identity(), Function.identity()));
 
-        Optional<EncodingInfo> result;
+        EncodingBuilder builder = new EncodingBuilder();
+        Optional<Map<Expression, List<List<Selector>>>> forbiddenSelectors;
 
         if (shape instanceof RepairShape && ((RepairShape) shape).getLevel() == CONDITIONAL) {
-            result = encodeConditional(root, ((RepairShape) shape).getOriginal(), uniqueComponents, initialForbidden);
+            forbiddenSelectors = encodeConditional(root, ((RepairShape) shape).getOriginal(), uniqueComponents, initialForbidden, builder);
         } else {
-            result = encodeBranch(root, shape, uniqueComponents, initialForbidden);
+            forbiddenSelectors = encodeBranch(root, shape, uniqueComponents, initialForbidden, builder);
         }
 
 
-        if (!result.isPresent()) {
+        if (!forbiddenSelectors.isPresent()) {
             throw new RuntimeException("wrong synthesis configuration");
         }
 
+        EncodingInfo result = builder.build(forbiddenSelectors.get());
+
         List<Node> hard = new ArrayList<>();
         List<Node> soft = new ArrayList<>();
 
         // choice synthesis constraints:
-        hard.addAll(result.get().clauses);
+        hard.addAll(result.clauses);
 
         // branch activation constraints:
-        for (Map.Entry<Variable, List<Selector>> entry : result.get().nodeChoices.entrySet()) {
+        for (Map.Entry<Variable, List<Selector>> entry : result.nodeChoices.entrySet()) {
             if (!entry.getValue().isEmpty()) {
                 Node precondition;
-                if (result.get().branchDependencies.containsKey(entry.getKey())) {
-                    precondition = Node.disjunction(result.get().branchDependencies.get(entry.getKey()));
+                if (result.branchDependencies.containsKey(entry.getKey())) {
+                    precondition = Node.disjunction(result.branchDependencies.get(entry.getKey()));
                 } else {
                     precondition = BoolConst.TRUE;
                 }
@@ -126,7 +222,7 @@ public class TreeBoundedEncoder {
         }
 
         // forbidden constrains:
-        for (List<List<Selector>> selectors : result.get().forbiddenSelectors.values()) {
+        for (List<List<Selector>> selectors : result.forbiddenSelectors.values()) {
             if (!selectors.isEmpty()) {
                 hard.add(
                         Node.disjunction(selectors.stream().map(l ->
@@ -137,26 +233,23 @@ public class TreeBoundedEncoder {
         // uniqueness constraints:
         if (uniqueUsage) {
             for (Node component : components.elementSet()) {
-                if (result.get().componentUsage.containsKey(component)) {
-                    hard.addAll(Cardinality.SortingNetwork.atMostK(components.count(component),
-                            result.get().componentUsage.get(component)));
+                if (result.componentUsage.containsKey(component)) {
+                    hard.addAll(Cardinality.atMostK(components.count(component),
+                            result.componentUsage.get(component)));
                 }
             }
         }
 
-        soft.addAll(result.get().originalSelectors);
+        soft.addAll(result.originalSelectors);
 
-        return new ImmutableTriple<>(root, new ImmutablePair<>(hard, soft), result.get());
+        return new ImmutableTriple<>(root, new ImmutablePair<>(hard, soft), result);
     }
 
-    private Optional<EncodingInfo> encodeConditional(Variable output, Expression original, List<Node> components, Map<Expression, Expression> forbidden) {
-        List<Node> clauses = new ArrayList<>();
-        Map<Variable, List<Variable>> tree = new HashMap<>();
-        Map<Variable, List<Selector>> nodeChoices = new HashMap<>();
-        Map<Selector, Node> selectedComponent = new HashMap<>();
-        List<Selector> originalSelectors = new ArrayList<>();
-        Map<Variable, List<Selector>> branchDependencies = new HashMap<>();
-        Map<Node, List<Selector>> componentUsage = new HashMap<>();
+    private Optional<Map<Expression, List<List<Selector>>>> encodeConditional(Variable output,
+                                                                            Expression original,
+                                                                            List<Node> components,
+                                                                            Map<Expression, Expression> forbidden,
+                                                                            EncodingBuilder builder) {
         Map<Expression, List<List<Selector>>> globalForbiddenResult = new HashMap<>(); //FIXME: unsupported
 
         if (output.getType().equals(IntType.TYPE)) {
@@ -168,62 +261,33 @@ public class TreeBoundedEncoder {
             BranchOutput elseOut = new BranchOutput(IntType.TYPE);
 
             //FIXME: forbidden not supported
-            EncodingInfo condResult = encodeBranch(condOut, new BoundedShape(CONDITIONAL_COND_BOUND, BoolType.TYPE), components, new HashMap<>()).get();
-            EncodingInfo thenResult = encodeBranch(thenOut, new RepairShape(original, EMPTY), components, new HashMap<>()).get();
-            EncodingInfo elseResult = encodeBranch(elseOut, new BoundedShape(CONDITIONAL_ELSE_BOUND, IntType.TYPE), components, new HashMap<>()).get();
-
-            List<EncodingInfo> results = new ArrayList<>();
-            results.add(condResult);
-            results.add(thenResult);
-            results.add(elseResult);
+            //NOTE: original selectors come only from then, because other branches are bounded
+            encodeBranch(condOut, new BoundedShape(CONDITIONAL_COND_BOUND, BoolType.TYPE), components, new HashMap<>(), builder).get();
+            encodeBranch(thenOut, new RepairShape(original, EMPTY), components, new HashMap<>(), builder).get();
+            encodeBranch(elseOut, new BoundedShape(CONDITIONAL_ELSE_BOUND, IntType.TYPE), components, new HashMap<>(), builder).get();
 
             List<Variable> children = new ArrayList<>();
             children.add(condOut);
             children.add(thenOut);
             children.add(elseOut);
 
-            tree.put(output, children);
-            tree.putAll(condResult.tree);
-            tree.putAll(thenResult.tree);
-            tree.putAll(elseResult.tree);
-
             List<Selector> currentChoices = new ArrayList<>();
             currentChoices.add(idChoice);
             currentChoices.add(iteChoice);
 
-            nodeChoices.put(output, currentChoices);
-            nodeChoices.putAll(condResult.nodeChoices);
-            nodeChoices.putAll(thenResult.nodeChoices);
-            nodeChoices.putAll(elseResult.nodeChoices);
+            builder.addBranch(output, children, currentChoices);
 
-            selectedComponent.put(idChoice, Library.ID(BoolType.TYPE));
-            selectedComponent.put(iteChoice, Library.ITE);
-            selectedComponent.putAll(condResult.selectedComponent);
-            selectedComponent.putAll(thenResult.selectedComponent);
-            selectedComponent.putAll(elseResult.selectedComponent);
+            //NOTE: top components are not counted in usage
+            builder.select(idChoice, Library.ID(BoolType.TYPE));
+            builder.select(iteChoice, Library.ITE);
 
-            originalSelectors.addAll(thenResult.originalSelectors); //NODE: only from then
-            originalSelectors.add(idChoice);
+            builder.originalSelectors.add(idChoice);
 
-            branchDependencies.put(thenOut, currentChoices);
+            builder.branchDependencies.put(thenOut, currentChoices);
             List<Selector> newChoices = new ArrayList<>();
             newChoices.add(iteChoice);
-            branchDependencies.put(elseOut, newChoices);
-            branchDependencies.put(condOut, newChoices);
-            branchDependencies.putAll(condResult.branchDependencies);
-            branchDependencies.putAll(thenResult.branchDependencies);
-            branchDependencies.putAll(elseResult.branchDependencies);
-
-            //NOTE: top components are not counted in usage
-            for (EncodingInfo result : results) {
-                for (Map.Entry<Node, List<Selector>> usage : result.componentUsage.entrySet()) {
-                    if (componentUsage.containsKey(usage.getKey())) {
-                        componentUsage.get(usage.getKey()).addAll(usage.getValue());
-                    } else {
-                        componentUsage.put(usage.getKey(), usage.getValue());
-                    }
-                }
-            }
+            builder.branchDependencies.put(elseOut, newChoices);
+            builder.branchDependencies.put(condOut, newChoices);
 
             Map<Hole, Variable> idBranchMatching = new HashMap<>();
             idBranchMatching.put(Library.ID(BoolType.TYPE), thenOut);
@@ -232,13 +296,10 @@ public class TreeBoundedEncoder {
             iteBranchMatching.put((Hole) Library.ITE.getThenBranch(), thenOut);
             iteBranchMatching.put((Hole) Library.ITE.getElseBranch(), elseOut);
 
-            clauses.add(new Impl(idChoice, new Equal(output,
+            builder.clauses.add(new Impl(idChoice, new Equal(output,
                     Traverse.substitute(Library.ID(BoolType.TYPE), idBranchMatching))));
-            clauses.add(new Impl(iteChoice, new Equal(output,
+            builder.clauses.add(new Impl(iteChoice, new Equal(output,
                     Traverse.substitute(Library.ITE, iteBranchMatching))));
-            for (EncodingInfo result : results) {
-                clauses.addAll(result.clauses);
-            }
         } else {
             Selector idChoice = new Selector();
             Selector andChoice = new Selector();
@@ -248,57 +309,33 @@ public class TreeBoundedEncoder {
             BranchOutput rightOut = new BranchOutput(BoolType.TYPE);
 
             //FIXME: forbidden not supported
-            EncodingInfo leftResult = encodeBranch(leftOut, new RepairShape(original, EMPTY), components, new HashMap<>()).get();
-            EncodingInfo rightResult = encodeBranch(rightOut, new BoundedShape(LOGIC_NODE_BOUND, BoolType.TYPE), components, new HashMap<>()).get();
-
-            List<EncodingInfo> results = new ArrayList<>();
-            results.add(leftResult);
-            results.add(rightResult);
+            //NOTE: original selectors come only from left, because right is bounded
+            encodeBranch(leftOut, new RepairShape(original, EMPTY), components, new HashMap<>(), builder).get();
+            encodeBranch(rightOut, new BoundedShape(LOGIC_NODE_BOUND, BoolType.TYPE), components, new HashMap<>(), builder).get();
 
             List<Variable> children = new ArrayList<>();
             children.add(leftOut);
             children.add(rightOut);
 
-            tree.put(output, children);
-            tree.putAll(leftResult.tree);
-            tree.putAll(rightResult.tree);
-
             List<Selector> currentChoices = new ArrayList<>();
             currentChoices.add(idChoice);
             currentChoices.add(andChoice);
             currentChoices.add(orChoice);
 
-            nodeChoices.put(output, currentChoices);
-            nodeChoices.putAll(leftResult.nodeChoices);
-            nodeChoices.putAll(rightResult.nodeChoices);
+            builder.addBranch(output, children, currentChoices);
 
-            selectedComponent.put(idChoice, Library.ID(BoolType.TYPE));
-            selectedComponent.put(andChoice, Library.AND);
-            selectedComponent.put(orChoice, Library.OR);
-            selectedComponent.putAll(leftResult.selectedComponent);
-            selectedComponent.putAll(rightResult.selectedComponent);
+            //NOTE: top components are not counted in usage
+            builder.select(idChoice, Library.ID(BoolType.TYPE));
+            builder.select(andChoice, Library.AND);
+            builder.select(orChoice, Library.OR);
 
-            originalSelectors.addAll(leftResult.originalSelectors); //NODE: only from left
-            originalSelectors.add(idChoice);
+            builder.originalSelectors.add(idChoice);
 
-            branchDependencies.put(leftOut, currentChoices);
+            builder.branchDependencies.put(leftOut, currentChoices);
             List<Selector> rightChoices = new ArrayList<>();
             rightChoices.add(andChoice);
             rightChoices.add(orChoice);
-            branchDependencies.put(rightOut, rightChoices);
-            branchDependencies.putAll(leftResult.branchDependencies);
-            branchDependencies.putAll(rightResult.branchDependencies);
-
-            //NOTE: top components are not counted in usage
-            for (EncodingInfo result : results) {
-                for (Map.Entry<Node, List<Selector>> usage : result.componentUsage.entrySet()) {
-                    if (componentUsage.containsKey(usage.getKey())) {
-                        componentUsage.get(usage.getKey()).addAll(usage.getValue());
-                    } else {
-                        componentUsage.put(usage.getKey(), usage.getValue());
-                    }
-                }
-            }
+            builder.branchDependencies.put(rightOut, rightChoices);
 
             Map<Hole, Variable> idBranchMatching = new HashMap<>();
             idBranchMatching.put(Library.ID(BoolType.TYPE), leftOut);
@@ -309,27 +346,30 @@ public class TreeBoundedEncoder {
             orBranchMatching.put((Hole) Library.OR.getLeft(), leftOut);
             orBranchMatching.put((Hole) Library.OR.getRight(), rightOut);
 
-            clauses.add(new Impl(idChoice, new Equal(output,
+            builder.clauses.add(new Impl(idChoice, new Equal(output,
                     Traverse.substitute(Library.ID(BoolType.TYPE), idBranchMatching))));
-            clauses.add(new Impl(andChoice, new Equal(output,
+            builder.clauses.add(new Impl(andChoice, new Equal(output,
                     Traverse.substitute(Library.AND, andBranchMatching))));
-            clauses.add(new Impl(orChoice, new Equal(output,
+            builder.clauses.add(new Impl(orChoice, new Equal(output,
                     Traverse.substitute(Library.OR, orBranchMatching))));
-            for (EncodingInfo result : results) {
-                clauses.addAll(result.clauses);
-            }
         }
-        return Optional.of(new EncodingInfo(tree, nodeChoices, selectedComponent, branchDependencies, componentUsage, globalForbiddenResult, originalSelectors, clauses));
+        return Optional.of(globalForbiddenResult);
     }
 
-    private Optional<EncodingInfo> encodeBranch(Variable output, Shape shape, List<Node> components, Map<Expression, Expression> forbidden) {
+    /**
+     * Encodes branch and its subbranches into builder
+     *
+     * @return selectors of forbidden programs, or empty if no component can be selected for the branch
+     */
+    private Optional<Map<Expression, List<List<Selector>>>> encodeBranch(Variable output,
+                                                                       Shape shape,
+                                                                       List<Node> components,
+                                                                       Map<Expression, Expression> forbidden,
+                                                                       EncodingBuilder builder) {
+        int[] checkpoint = builder.checkpoint();
+
         // Local results:
         List<Selector> currentChoices = new ArrayList<>();
-        Map<Selector, Node> selectedComponent = new HashMap<>();
-        Map<Variable, List<Selector>> branchDependencies = new HashMap<>();
-        Map<Node, List<Selector>> componentUsage = new HashMap<>();
-
-        List<Node> clauses = new ArrayList<>();
 
         List<Node> relevantComponents = selectRelevantComponents(components, shape);
         List<Node> leafComponents = new ArrayList<>(relevantComponents);
@@ -344,7 +384,6 @@ public class TreeBoundedEncoder {
             localForbiddenSelectors.put(expression, new ArrayList<>());
         }
         Map<Expression, List<Selector>> localForbiddenLeavesSelectors = new HashMap<>();
-        List<Selector> originalSelectors = new ArrayList<>();
 
         for (Node component : leafComponents) {
             Selector selector = new Selector();
@@ -358,21 +397,18 @@ public class TreeBoundedEncoder {
             }
             if (shape instanceof RepairShape) {
                 if (component.equals(((RepairShape) shape).getOriginal().getRoot())) {
-                    originalSelectors.add(selector);
+                    builder.originalSelectors.add(selector);
                 }
             }
-            clauses.add(new Impl(selector, new Equal(output, component)));
-            if (!componentUsage.containsKey(component)) {
-                componentUsage.put(component, new ArrayList<>());
-            }
-            componentUsage.get(component).add(selector);
-            selectedComponent.put(selector, component);
+            builder.clauses.add(new Impl(selector, new Equal(output, component)));
+            builder.use(selector, component);
+            builder.select(selector, component);
             currentChoices.add(selector);
         }
 
         List<Variable> children = new ArrayList<>();
-        // from child branch to its encoding:
-        Map<Variable, EncodingInfo> subresults = new HashMap<>();
+        // from child branch to its forbidden selectors:
+        Map<Variable, Map<Expression, List<List<Selector>>>> subresults = new HashMap<>();
 
         List<Node> feasibleComponents = new ArrayList<>(functionComponents);
 
@@ -472,7 +508,8 @@ public class TreeBoundedEncoder {
 
             // encoding subnodes and removing infeasible children and components:
             for (Variable child : children) {
-                Optional<EncodingInfo> subresult = encodeBranch(child, subnodeShape.get(child), components, subnodeForbidden.get(child));
+                Optional<Map<Expression, List<List<Selector>>>> subresult =
+                        encodeBranch(child, subnodeShape.get(child), components, subnodeForbidden.get(child), builder);
                 if (!subresult.isPresent()) {
                     feasibleComponents.removeAll(componentDependencies.get(child));
                     infeasibleChildren.add(child);
@@ -487,10 +524,7 @@ public class TreeBoundedEncoder {
                 Selector selector = new Selector();
                 Collection<Variable> usedBranches = branchMatching.get(component).values();
                 for (Variable child : usedBranches) {
-                    if (!branchDependencies.containsKey(child)) {
-                        branchDependencies.put(child, new ArrayList<>());
-                    }
-                    branchDependencies.get(child).add(selector);
+                    builder.addDependency(child, selector);
                 }
                 for (Expression expression : localForbidden) {
                     if (expression.getRoot().equals(component)) {
@@ -500,45 +534,31 @@ public class TreeBoundedEncoder {
                 if (shape instanceof RepairShape) {
                     Node original = ((RepairShape) shape).getOriginal().getRoot();
                     if (original.equals(component)) {
-                        originalSelectors.add(selector);
+                        builder.originalSelectors.add(selector);
                     }
                 }
-                clauses.add(new Impl(selector, new Equal(output, Traverse.substitute(component, branchMatching.get(component)))));
-                if (!componentUsage.containsKey(component)) {
-                    componentUsage.put(component, new ArrayList<>());
+                builder.clauses.add(new Impl(selector, new Equal(output, Traverse.substitute(component, branchMatching.get(component)))));
+                if (symmetryBreaking && isCommutative(component)) {
+                    List<Hole> inputs = Expression.getComponentInputs(component);
+                    Variable left = branchMatching.get(component).get(inputs.get(0));
+                    Variable right = branchMatching.get(component).get(inputs.get(1));
+                    if (isInterchangeable(subnodeShape.get(left), subnodeShape.get(right))
+                            && subnodeForbidden.get(left).isEmpty() && subnodeForbidden.get(right).isEmpty()) {
+                        builder.clauses.addAll(orderingClauses(selector, components, builder, left, right));
+                    }
                 }
-                componentUsage.get(component).add(selector);
-                selectedComponent.put(selector, component);
+                builder.use(selector, component);
+                builder.select(selector, component);
                 currentChoices.add(selector);
             }
         }
 
         if (currentChoices.isEmpty()) {
+            builder.rollback(checkpoint);
             return Optional.empty();
         }
 
-        Map<Variable, List<Selector>> nodeChoices = new HashMap<>();
-        nodeChoices.put(output, currentChoices);
-        Map<Variable, List<Variable>> tree = new HashMap<>();
-        tree.put(output, new ArrayList<>());
-        tree.put(output, children);
-
-        // merging subnodes information:
-        for (EncodingInfo subresult: subresults.values()) {
-            clauses.addAll(subresult.clauses);
-            for (Map.Entry<Node, List<Selector>> usage : subresult.componentUsage.entrySet()) {
-                if (componentUsage.containsKey(usage.getKey())) {
-                    componentUsage.get(usage.getKey()).addAll(usage.getValue());
-                } else {
-                    componentUsage.put(usage.getKey(), usage.getValue());
-                }
-            }
-            tree.putAll(subresult.tree);
-            nodeChoices.putAll(subresult.nodeChoices);
-            selectedComponent.putAll(subresult.selectedComponent);
-            branchDependencies.putAll(subresult.branchDependencies);
-            originalSelectors.addAll(subresult.originalSelectors);
-        }
+        builder.addBranch(output, children, currentChoices);
 
         Map<Expression, List<List<Selector>>> globalForbiddenResult = new HashMap<>();
 
@@ -554,8 +574,7 @@ public class TreeBoundedEncoder {
                     globalForbiddenResult.put(global, new ArrayList<>());
                     globalForbiddenResult.get(global).add(localForbiddenSelectors.get(local));
                     boolean failed = false;
-                    for (Map.Entry<Variable, EncodingInfo> entry : subresults.entrySet()) {
-                        Map<Expression, List<List<Selector>>> subnodeForbidden = entry.getValue().forbiddenSelectors;
+                    for (Map<Expression, List<List<Selector>>> subnodeForbidden : subresults.values()) {
                         if (!subnodeForbidden.containsKey(global)) { // means that it is not matched with local program
                             continue;
                         }
@@ -573,7 +592,47 @@ public class TreeBoundedEncoder {
             }
         }
 
-        return Optional.of(new EncodingInfo(tree, nodeChoices, selectedComponent, branchDependencies, componentUsage, globalForbiddenResult, originalSelectors, clauses));
+        return Optional.of(globalForbiddenResult);
+    }
+
+    private static boolean isCommutative(Node component) {
+        if (!(component instanceof Add || component instanceof Mult || component instanceof And || component instanceof Or
+                || component instanceof Equal || component instanceof NotEqual || component instanceof Iff)) {
+            return false;
+        }
+        BinaryOp op = (BinaryOp) component;
+        return op.getLeft() instanceof Hole && op.getRight() instanceof Hole
+                && ((Hole) op.getLeft()).getType().equals(((Hole) op.getRight()).getType());
+    }
+
+    /**
+     * Subtrees encode the same set of expressions, so their values can be swapped
+     */
+    private static boolean isInterchangeable(Shape left, Shape right) {
+        return left instanceof BoundedShape && right instanceof BoundedShape
+                && ((BoundedShape) left).getBound() == ((BoundedShape) right).getBound()
+                && left.getOutputType().equals(right.getOutputType());
+    }
+
+    /**
+     * If selector is chosen, the root component of the right subtree must not precede that of the left subtree
+     * in the order of components
+     */
+    private static List<Node> orderingClauses(Selector selector,
+                                              List<Node> components,
+                                              EncodingBuilder builder,
+                                              Variable left,
+                                              Variable right) {
+        List<Node> clauses = new ArrayList<>();
+        List<Selector> rightChoices = builder.nodeChoices.get(right);
+        for (Selector leftChoice : builder.nodeChoices.get(left)) {
+            int leftRank = components.indexOf(builder.selectedComponent.get(leftChoice));
+            List<Selector> allowed = rightChoices.stream()
+                    .filter(c -> components.indexOf(builder.selectedComponent.get(c)) >= leftRank)
+                    .collect(Collectors.toList());
+            clauses.add(new Impl(new And(selector, leftChoice), Node.disjunction(allowed)));
+        }
+        return clauses;
     }
 
     /**
@@ -624,17 +683,80 @@ public class TreeBoundedEncoder {
      */
     private List<Node> filterComponentsByType(Node pattern, List<Node> components) {
         List<Node> relevant = new ArrayList<>();
-        Type outputType = TypeInference.typeOf(pattern);
-        List<Type> args = Expression.getComponentInputs(pattern).stream().map(Hole::getType).collect(Collectors.toList());
         for (Node node : components) {
-            if (outputType.equals(TypeInference.typeOf(node)) &&
-                    args.equals(Expression.getComponentInputs(node).stream().map(Hole::getType).collect(Collectors.toList()))) {
+            if (hasSameType(pattern, node)) {
                 relevant.add(node);
             }
         }
         return relevant;
     }
 
+    private static boolean hasSameType(Node pattern, Node component) {
+        return TypeInference.typeOf(pattern).equals(TypeInference.typeOf(component)) &&
+                Expression.getComponentInputs(pattern).stream().map(Hole::getType).collect(Collectors.toList()).equals(
+                        Expression.getComponentInputs(component).stream().map(Hole::getType).collect(Collectors.toList()));
+    }
+
+    /**
+     * Selectors of encoding of shape that are outside of the search space of level. Assuming their negations
+     * restricts the encoding to level, because the remaining choices at the nodes of original expression
+     * are exactly the choices of level and the other nodes can only be activated by restricted selectors.
+     */
+    protected List<Selector> restrictedSelectors(RepairShape shape,
+                                                 Variable root,
+                                                 EncodingInfo result,
+                                                 SynthesisLevel level) {
+        if (shape.getLevel() == CONDITIONAL || !shape.getLevel().includes(level)) {
+            throw new IllegalArgumentException("level " + shape.getLevel() + " cannot be restricted to " + level);
+        }
+        List<Selector> restricted = new ArrayList<>();
+        if (level != shape.getLevel()) {
+            restrictedSelectorsAux(root, shape.getOriginal(), result, level, restricted);
+        }
+        return restricted;
+    }
+
+    private void restrictedSelectorsAux(Variable branch,
+                                        Expression original,
+                                        EncodingInfo result,
+                                        SynthesisLevel level,
+                                        List<Selector> restricted) {
+        Node root = original.getRoot();
+        for (Selector choice : result.nodeChoices.get(branch)) {
+            if (!isAllowed(result.selectedComponent.get(choice), root, level)) {
+                restricted.add(choice);
+            }
+        }
+        if (Expression.isLeaf(root)) {
+            return;
+        }
+        //NOTE: allowed components have the same inputs as original, so they share its branches (see decodeAux)
+        List<Variable> children = new ArrayList<>(result.tree.get(branch));
+        for (Hole input : Expression.getComponentInputs(root)) {
+            Variable child = children.stream().filter(o -> o.getType().equals(input.getType())).findFirst().get();
+            children.remove(child);
+            restrictedSelectorsAux(child, original.getChildren().get(input), result, level, restricted);
+        }
+    }
+
+    /**
+     * @return component can replace original node at level (see selectRelevantComponents)
+     */
+    private static boolean isAllowed(Node component, Node original, SynthesisLevel level) {
+        switch (level) {
+            case EMPTY:
+                return component.equals(original);
+            case OPERATORS:
+                return Expression.isLeaf(original) ? component.equals(original) : hasSameType(original, component);
+            case LEAVES:
+                return Expression.isLeaf(original) ? hasSameType(original, component) : component.equals(original);
+            case SUBSTITUTION:
+                return true;
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
+
     protected Pair<Expression, Map<Parameter, Constant>> decode(Map<Variable, Constant> assignment,
                                                                 Variable root,
                                                                 EncodingInfo result) {
@@ -1,5 +1,6 @@
 package sg.edu.nus.comp.nsynth;
 
+import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.smtlib.IExpr;
@@ -18,6 +19,36 @@ import java.util.*;
  */
 public class TypeCorrector {
 
+    /**
+     * Corrections of a location for a type of angelic values: corrected expression, and corrected variable tables
+     * with positions of values that become boolean
+     */
+    private static class Correction {
+        private final Expression expression;
+        private final boolean angelicToBool;
+        private final Set<ProgramVariable> onlyBool;
+        // tables are interned, so they are compared by identity
+        private final Map<List<ProgramVariable>, Pair<List<ProgramVariable>, boolean[]>> tables = new IdentityHashMap<>();
+
+        Correction(Expression expression, boolean angelicToBool, Set<ProgramVariable> onlyBool) {
+            this.expression = expression;
+            this.angelicToBool = angelicToBool;
+            this.onlyBool = onlyBool;
+        }
+
+        private Pair<List<ProgramVariable>, boolean[]> correctTable(List<ProgramVariable> table) {
+            return tables.computeIfAbsent(table, t -> {
+                ImmutableList.Builder<ProgramVariable> corrected = ImmutableList.builder();
+                boolean[] toBool = new boolean[t.size()];
+                for (int j = 0; j < t.size(); j++) {
+                    toBool[j] = onlyBool.contains(t.get(j));
+                    corrected.add(toBool[j] ? ProgramVariable.mkBool(t.get(j).getName()) : t.get(j));
+                }
+                return new ImmutablePair<>(corrected.build(), toBool);
+            });
+        }
+    }
+
     public static Pair<AngelicForest, Map<AngelixLocation, Expression>> correct(AngelicForest angelicForest,
                                                                                 Map<AngelixLocation, Expression> original) {
 
@@ -26,23 +57,33 @@ public class TypeCorrector {
 
         Set<AngelixLocation> locations = angelicForest.getAllLocations();
 
+        // from location to corrections for boolean and integer angelic values
+        Map<AngelixLocation, Map<Boolean, Correction>> corrections = new HashMap<>();
+
+        AngelicPath.Builder builder = new AngelicPath.Builder();
         Map<AngelixTest, List<AngelicPath>> pathsForTests = angelicForest.getPaths();
         for (Map.Entry<AngelixTest, List<AngelicPath>> entry : pathsForTests.entrySet()) {
             AngelixTest test = entry.getKey();
             List<AngelicPath> paths = entry.getValue();
             List<AngelicPath> correctedPaths = new ArrayList<>();
             for (AngelicPath path : paths) {
-                Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> angelicValues = path.getAngelicValues();
-                Map<AngelixLocation, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> correctedAngelicValues = new HashMap<>();
                 for (AngelixLocation loc : locations) {
-                    Expression orig = original.get(loc);
-                    Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> angelic = angelicValues.get(loc);
-                    Pair<Expression, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>> corrected =
-                            correctAngelicAndExpression(orig, angelic);
-                    correctedOriginal.put(loc, corrected.getLeft());
-                    correctedAngelicValues.put(loc, corrected.getRight());
+                    Map<Boolean, Correction> locCorrections = corrections.computeIfAbsent(loc, l -> new HashMap<>());
+                    for (int i = 0; i < path.getInstanceCount(loc); i++) {
+                        Constant angelic = path.getAngelicValue(loc, i);
+                        boolean boolAngelic = angelic.getType().equals(BoolType.TYPE);
+                        Correction correction = locCorrections.computeIfAbsent(boolAngelic,
+                                b -> correction(original.get(loc), b));
+                        if (correction.angelicToBool) {
+                            angelic = intToBool((IntConst) angelic);
+                        }
+                        Pair<List<ProgramVariable>, boolean[]> table = correction.correctTable(path.getContextVariables(loc, i));
+                        builder.add(loc, path.getInstance(loc, i), angelic, table.getLeft(),
+                                correctValues(path.getContextValues(loc, i), table.getRight()));
+                        correctedOriginal.put(loc, correction.expression);
+                    }
                 }
-                correctedPaths.add(new AngelicPath(correctedAngelicValues));
+                correctedPaths.add(builder.build());
             }
             correctedPathsForTests.put(test, correctedPaths);
         }
@@ -51,30 +92,11 @@ public class TypeCorrector {
         return new ImmutablePair<>(correctedAngelicForest, correctedOriginal);
     }
 
-    private static Pair<Expression, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>>>
-    correctAngelicAndExpression(Expression original, Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> angelic) {
-        Expression correctedOriginal = null;
-        Map<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> correctedAngelic = new HashMap<>();
-        for (Map.Entry<Integer, Pair<Constant, Map<ProgramVariable, Constant>>> entry : angelic.entrySet()) {
-            int instance = entry.getKey();
-            Pair<Constant, Map<ProgramVariable, Constant>> values = entry.getValue();
-            Pair<Expression, Pair<Constant, Map<ProgramVariable, Constant>>> corrected = correctValueAndExpression(original, values);
-            correctedOriginal = corrected.getLeft();
-            correctedAngelic.put(instance, corrected.getRight());
-        }
-        return new ImmutablePair<>(correctedOriginal, correctedAngelic);
-    }
-
-    private static Pair<Expression, Pair<Constant, Map<ProgramVariable, Constant>>>
-    correctValueAndExpression(Expression original, Pair<Constant, Map<ProgramVariable, Constant>> values) {
-        Constant correctedAngelic = values.getKey();
-        Type topType = values.getLeft().getType();
-        if (!topType.equals(BoolType.TYPE)) {
-            topType = TypeInference.typeOf(original.getRoot());
-            if (topType.equals(BoolType.TYPE)) {
-                correctedAngelic = intToBool((IntConst) correctedAngelic);
-            }
-        }
+    /**
+     * @param boolAngelic whether angelic values are boolean
+     */
+    private static Correction correction(Expression original, boolean boolAngelic) {
+        Type topType = boolAngelic ? BoolType.TYPE : TypeInference.typeOf(original.getRoot());
         Pair<Set<ProgramVariable>, Set<ProgramVariable>> pair = inferVariableConstraints(topType, original);
         Set<ProgramVariable> boolVars = pair.getLeft();
         Set<ProgramVariable> intVars = pair.getRight();
@@ -86,18 +108,25 @@ public class TypeCorrector {
             }
         }
 
-        Map<ProgramVariable, Constant> correctedEnv = new HashMap<>();
-        for (Map.Entry<ProgramVariable, Constant> entry : values.getRight().entrySet()) {
-            if (onlyBool.contains(entry.getKey())) {
-                correctedEnv.put(ProgramVariable.mkBool(entry.getKey().getName()), intToBool((IntConst) entry.getValue()));
-            } else {
-                correctedEnv.put(entry.getKey(), entry.getValue());
+        Expression withCorrectedVars = switchToBool(original, onlyBool);
+        return new Correction(correctInconsistent(withCorrectedVars, topType),
+                !boolAngelic && topType.equals(BoolType.TYPE), onlyBool);
+    }
+
+    /**
+     * @return values with booleans as 0 and 1, the same array if nothing changes
+     */
+    private static int[] correctValues(int[] values, boolean[] toBool) {
+        int[] corrected = values;
+        for (int j = 0; j < values.length; j++) {
+            if (toBool[j] && values[j] != 0 && values[j] != 1) {
+                if (corrected == values) {
+                    corrected = values.clone();
+                }
+                corrected[j] = 1;
             }
         }
-
-        Expression withCorrectedVars = switchToBool(original, onlyBool);
-        Expression correctedOriginal = correctInconsistent(withCorrectedVars, topType);
-        return new ImmutablePair<>(correctedOriginal, new ImmutablePair<>(correctedAngelic, correctedEnv));
+        return corrected;
     }
 
     private static BoolConst intToBool(IntConst value) {
@@ -1,15 +1,14 @@
 package sg.edu.nus.comp.nsynth;
 
 import com.microsoft.z3.*;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sg.edu.nus.comp.nsynth.ast.*;
 import sg.edu.nus.comp.nsynth.ast.theory.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Z3 wrapper with custom and builtin Fu-Malik algorithm implementations
@@ -22,6 +21,16 @@ public class Z3 implements Solver {
 
     private Optional<Integer> customFuMalikBound = Optional.empty();
 
+    private Optional<Integer> timeout = Optional.empty();
+
+    private Optional<String> maxsatEngine = Optional.empty();
+
+    private Metrics metrics = new Metrics();
+
+    private volatile boolean interrupted = false;
+
+    private boolean closed = false;
+
     public Z3() {
         HashMap<String, String> cfg = new HashMap<>();
         cfg.put("model", "true");
@@ -36,10 +45,108 @@ public class Z3 implements Solver {
         customFuMalikBound = Optional.empty();
     }
 
-    private BoolExpr toZ3(VariableMarshaller marshaller, Node node) {
-        NodeTranslatorVisitor visitor = new NodeTranslatorVisitor(marshaller);
-        node.accept(visitor);
-        return (BoolExpr)visitor.getExpr();
+    /**
+     * @param milliseconds budget of each check, exceeding it raises SolverTimeoutException
+     */
+    public void enableTimeout(int milliseconds) {
+        timeout = Optional.of(milliseconds);
+    }
+
+    public void disableTimeout() {
+        timeout = Optional.empty();
+    }
+
+    /**
+     * @param engine MaxSAT engine of Z3 Optimize queries, e.g. maxres, pd-maxres, wmax
+     */
+    public void enableMaxsatEngine(String engine) {
+        maxsatEngine = Optional.of(engine);
+    }
+
+    public void disableMaxsatEngine() {
+        maxsatEngine = Optional.empty();
+    }
+
+    /**
+     * Records translation and solving times, unsat core sizes and query sizes
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Aborts the running and all subsequent queries with SolverTimeoutException. Can be called from another thread.
+     */
+    public synchronized void interrupt() {
+        interrupted = true;
+        if (!closed) {
+            ctx.interrupt();
+        }
+    }
+
+    /**
+     * Releases the native context. The solver must not be used afterwards.
+     */
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            ctx.close();
+        }
+    }
+
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    private void checkInterrupted() {
+        if (interrupted) {
+            throw new SolverTimeoutException("solver interrupted");
+        }
+    }
+
+    private Params queryParams() {
+        Params params = ctx.mkParams();
+        timeout.ifPresent(ms -> params.add("timeout", ms));
+        return params;
+    }
+
+    private Params optimizeParams() {
+        Params params = queryParams();
+        maxsatEngine.ifPresent(engine -> params.add("maxsat_engine", engine));
+        return params;
+    }
+
+    /**
+     * Exception for unknown check result: timeouts and cancellations are reported as SolverTimeoutException
+     */
+    private RuntimeException unknown(String reason) {
+        checkInterrupted();
+        if (timeout.isPresent() && (reason.contains("timeout") || reason.contains("canceled"))) {
+            return new SolverTimeoutException(reason);
+        }
+        return new UnsupportedOperationException(reason);
+    }
+
+    private BoolExpr toZ3(NodeTranslatorVisitor translator, Node node) {
+        long start = System.nanoTime();
+        BoolExpr expr = (BoolExpr)translator.translate(node);
+        metrics.addTime("translation", System.nanoTime() - start);
+        return expr;
+    }
+
+    /**
+     * Runs check and records its time
+     */
+    private Status timedCheck(Supplier<Status> check) {
+        long start = System.nanoTime();
+        try {
+            return check.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            metrics.addTime("solving", elapsed);
+            metrics.record("checkMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+            metrics.count("checks", 1);
+        }
     }
 
     @Override
@@ -52,119 +159,248 @@ public class Z3 implements Solver {
     }
 
     private Optional<Map<Variable, Constant>> standardMaxsat(List<Node> hard, List<Node> soft) {
-        com.microsoft.z3.Optimize solver = ctx.mkOptimize();
-        VariableMarshaller marshaller = new VariableMarshaller();
+        return weightedMaxsat(hard, soft, Collections.nCopies(soft.size(), 1));
+    }
+
+    /**
+     * Maxsat using Z3 Optimize, minimizes the total weight of violated soft clauses
+     */
+    public Optional<Map<Variable, Constant>> weightedMaxsat(List<Node> hard, List<Node> soft, List<Integer> weights) {
+        MaxsatSession session = startWeightedMaxsat(soft, weights);
         for (Node clause : hard) {
-            NodeTranslatorVisitor visitor = new NodeTranslatorVisitor(marshaller);
-            clause.accept(visitor);
-            solver.Add((BoolExpr)visitor.getExpr());
-        }
-        for (Node assumption : soft) {
-            NodeTranslatorVisitor visitor = new NodeTranslatorVisitor(marshaller);
-            assumption.accept(visitor);
-            solver.AssertSoft((BoolExpr)visitor.getExpr(), 1, "default");
+            session.addHard(clause);
         }
+        return session.solve();
+    }
 
-        Status status = solver.Check();
-        if (status.equals(Status.SATISFIABLE)) {
-            Model model = solver.getModel();
-            return Optional.of(getAssignment(model, marshaller));
-        } else if (status.equals(Status.UNSATISFIABLE)) {
-            return Optional.empty();
-        } else {
-            throw new UnsupportedOperationException();
+    private Optional<Map<Variable, Constant>> customMaxsat(List<Node> hard, List<Node> soft, int bound) {
+        MaxsatSession session = new FuMalikSession(soft, bound);
+        for (Node clause : hard) {
+            session.addHard(clause);
         }
+        return session.solve();
     }
 
-    private Optional<Map<Variable, Constant>> customMaxsat(List<Node> hard, List<Node> soft, int bound) {
-        com.microsoft.z3.Solver solver = ctx.mkSolver();
-        VariableMarshaller marshaller = new VariableMarshaller();
+    /**
+     * Starts an incremental maxsat query using custom Fu-Malik (unbounded if custom maxsat is disabled).
+     * Hard clauses can be added between solve calls, relaxations found so far are kept.
+     */
+    public MaxsatSession startMaxsat(List<Node> soft) {
+        return new FuMalikSession(soft, customFuMalikBound.orElse(Integer.MAX_VALUE));
+    }
 
-        // adding hard constraints
-        for (Node clause : hard) {
-            solver.add(toZ3(marshaller, clause));
+    /**
+     * Starts an incremental weighted maxsat query using Z3 Optimize
+     */
+    public MaxsatSession startWeightedMaxsat(List<Node> soft, List<Integer> weights) {
+        return new OptimizeSession(soft, weights);
+    }
+
+    /**
+     * Maxsat query that accepts hard clauses between solve calls
+     */
+    public interface MaxsatSession {
+        void addHard(Node clause);
+
+        /**
+         * @return empty if hard clauses are unsatisfiable or the query is bounded and requires too many relaxations
+         */
+        default Optional<Map<Variable, Constant>> solve() {
+            return solve(Collections.emptyList());
         }
 
-        // soft * aux
-        List<Pair<Node, Selector>> relaxedSoft = soft.stream().map(s ->
-                new ImmutablePair<>(s, new Selector())).collect(Collectors.toList());
+        /**
+         * Solves with assumptions that hold only for this call. Learned clauses are kept between calls
+         */
+        Optional<Map<Variable, Constant>> solve(List<Node> assumptions);
+    }
 
-        int iteration = 0;
+    private class OptimizeSession implements MaxsatSession {
+        private com.microsoft.z3.Optimize solver;
+        private VariableMarshaller marshaller;
+        private NodeTranslatorVisitor translator;
+
+        private OptimizeSession(List<Node> soft, List<Integer> weights) {
+            this.solver = ctx.mkOptimize();
+            this.solver.setParameters(optimizeParams());
+            this.marshaller = new VariableMarshaller();
+            this.translator = new NodeTranslatorVisitor(marshaller);
+            for (int i = 0; i < soft.size(); i++) {
+                solver.AssertSoft(toZ3(translator, soft.get(i)), weights.get(i), "default");
+            }
+        }
 
-        while (true) {
-            iteration++;
+        @Override
+        public void addHard(Node clause) {
+            solver.Add(toZ3(translator, clause));
+        }
 
-            // adding relaxed soft constraints
-            for (Pair<Node, Selector> pair : relaxedSoft) {
-                Node relax = new Or(pair.getLeft(), pair.getRight());
-                solver.add(toZ3(marshaller, relax));
+        /**
+         * Optimize does not support assumptions, so they are asserted in a temporary scope
+         */
+        @Override
+        public Optional<Map<Variable, Constant>> solve(List<Node> assumptions) {
+            checkInterrupted();
+            if (!assumptions.isEmpty()) {
+                solver.Push();
+                for (Node assumption : assumptions) {
+                    solver.Add(toZ3(translator, assumption));
+                }
+            }
+            try {
+                Status status = timedCheck(solver::Check);
+                if (status.equals(Status.SATISFIABLE)) {
+                    Model model = solver.getModel();
+                    return Optional.of(getAssignment(model, marshaller));
+                } else if (status.equals(Status.UNSATISFIABLE)) {
+                    return Optional.empty();
+                } else {
+                    throw unknown(solver.getReasonUnknown());
+                }
+            } finally {
+                if (!assumptions.isEmpty()) {
+                    solver.Pop();
+                }
             }
+        }
+    }
+
+    /**
+     * Incremental Fu-Malik: hard clauses and relaxed soft clauses are translated and asserted once,
+     * each iteration only asserts clauses relaxed by the last core and the corresponding at-most-one constraint.
+     * Relaxations are found under the assumptions of the solve call, so they are discarded when assumptions change
+     * (the asserted relaxation clauses only contain fresh variables and remain satisfiable)
+     */
+    private class FuMalikSession implements MaxsatSession {
+        private com.microsoft.z3.Solver solver;
+        private VariableMarshaller marshaller;
+        private NodeTranslatorVisitor translator;
+
+        // current relaxed soft constraints and assumptions (negated aux) enabling them
+        private BoolExpr[] relaxedSoft;
+        private BoolExpr[] assumptions;
+
+        // soft constraints and assumptions before relaxation
+        private BoolExpr[] initialSoft;
+        private BoolExpr[] initialAssumptions;
+
+        private List<Node> currentAssumptions = Collections.emptyList();
+
+        private int bound;
+        private int relaxations = 0;
+
+        private FuMalikSession(List<Node> soft, int bound) {
+            this.solver = ctx.mkSolver();
+            this.solver.setParameters(queryParams());
+            this.marshaller = new VariableMarshaller();
+            this.translator = new NodeTranslatorVisitor(marshaller);
+            this.bound = bound;
+            relaxedSoft = new BoolExpr[soft.size()];
+            assumptions = new BoolExpr[soft.size()];
+            for (int i = 0; i < soft.size(); i++) {
+                relaxedSoft[i] = toZ3(translator, soft.get(i));
+                assumptions[i] = relax(relaxedSoft[i]);
+            }
+            initialSoft = relaxedSoft.clone();
+            initialAssumptions = assumptions.clone();
+        }
 
-            Map<Selector, BoolExpr> auxToSwitches = new HashMap<>();
-            ArrayList<BoolExpr> assumptionExprs = new ArrayList<>();
-            for (Pair<Node, Selector> pair : relaxedSoft) {
-                Node notAux = new Not(pair.getRight());
-                BoolExpr assumption = toZ3(marshaller, notAux);
-                auxToSwitches.put(pair.getRight(), assumption);
-                assumptionExprs.add(assumption);
+        @Override
+        public void addHard(Node clause) {
+            solver.add(toZ3(translator, clause));
+        }
+
+        /**
+         * @return empty if hard clauses are unsatisfiable or require more than bound relaxations in total
+         */
+        @Override
+        public Optional<Map<Variable, Constant>> solve(List<Node> queryAssumptions) {
+            if (!queryAssumptions.equals(currentAssumptions)) {
+                relaxedSoft = initialSoft.clone();
+                assumptions = initialAssumptions.clone();
+                relaxations = 0;
+                currentAssumptions = new ArrayList<>(queryAssumptions);
             }
-            BoolExpr[] assumptionArray = assumptionExprs.toArray(new BoolExpr[assumptionExprs.size()]);
-
-            Status status = solver.check(assumptionArray);
-
-            if (status.equals(Status.SATISFIABLE)) {
-                break;
-            } else if (iteration > bound) {
-                return Optional.empty();
-            } else if (status.equals(Status.UNSATISFIABLE)) {
-                Expr[] unsatCoreArray = solver.getUnsatCore();
-                Set<Expr> unsatCore = new HashSet<>(Arrays.asList(unsatCoreArray));
-                List<Selector> blocks = new ArrayList<>();
-                relaxedSoft = relaxedSoft.stream().map(elem -> {
-                    if (unsatCore.contains(auxToSwitches.get(elem.getRight()))) {
-                        Selector block = new Selector();
-                        blocks.add(block);
-                        Node newSoft = new Or(elem.getLeft(), block);
-                        Selector newAux = new Selector();
-                        return new ImmutablePair<Node, Selector>(newSoft, newAux);
-                    } else {
-                        return elem;
+            BoolExpr[] restrictions = new BoolExpr[queryAssumptions.size()];
+            for (int i = 0; i < restrictions.length; i++) {
+                restrictions[i] = toZ3(translator, queryAssumptions.get(i));
+            }
+            while (true) {
+                checkInterrupted();
+                BoolExpr[] checked = Arrays.copyOf(assumptions, assumptions.length + restrictions.length);
+                System.arraycopy(restrictions, 0, checked, assumptions.length, restrictions.length);
+                Status status = timedCheck(() -> solver.check(checked));
+
+                if (status.equals(Status.SATISFIABLE)) {
+                    break;
+                } else if (status.equals(Status.UNSATISFIABLE)) {
+                    if (relaxations >= bound) {
+                        return Optional.empty();
+                    }
+                    relaxations++;
+                    Set<Expr> unsatCore = new HashSet<>(Arrays.asList(solver.getUnsatCore()));
+                    metrics.record("unsatCoreSize", unsatCore.size());
+                    List<Selector> blocks = new ArrayList<>();
+                    for (int i = 0; i < relaxedSoft.length; i++) {
+                        if (unsatCore.contains(assumptions[i])) {
+                            Selector block = new Selector();
+                            blocks.add(block);
+                            relaxedSoft[i] = ctx.mkOr(relaxedSoft[i], toZ3(translator, block));
+                            assumptions[i] = relax(relaxedSoft[i]);
+                        }
+                    }
+                    if (blocks.isEmpty()) { // hard clauses are unsatisfiable under query assumptions
+                        return Optional.empty();
                     }
-                }).collect(Collectors.toList());
-                // adding at most 1
-                for (Node node : Cardinality.SortingNetwork.atMostK(1, blocks)) {
-                    solver.add(toZ3(marshaller, node));
+                    // adding at most 1
+                    for (Node node : Cardinality.atMostK(1, blocks)) {
+                        solver.add(toZ3(translator, node));
+                    }
+                } else {
+                    throw unknown(solver.getReasonUnknown());
                 }
-            } else {
-                throw new UnsupportedOperationException();
             }
+
+            Model model = solver.getModel();
+            return Optional.of(getAssignment(model, marshaller));
         }
 
-        Model model = solver.getModel();
-        return Optional.of(getAssignment(model, marshaller));
+        /**
+         * Asserts soft \/ aux for a fresh aux
+         * @return assumption not aux that enforces soft
+         */
+        private BoolExpr relax(BoolExpr soft) {
+            Selector aux = new Selector();
+            solver.add(ctx.mkOr(soft, toZ3(translator, aux)));
+            return toZ3(translator, new Not(aux));
+        }
     }
 
     @Override
     public Optional<Map<Variable, Constant>> sat(List<Node> clauses) {
         com.microsoft.z3.Solver solver = ctx.mkSolver();
+        solver.setParameters(queryParams());
         VariableMarshaller marshaller = new VariableMarshaller();
+        NodeTranslatorVisitor translator = new NodeTranslatorVisitor(marshaller);
         for (Node clause : clauses) {
-            solver.add(toZ3(marshaller, clause));
+            solver.add(toZ3(translator, clause));
         }
 
-        Status status = solver.check();
+        checkInterrupted();
+        Status status = timedCheck(solver::check);
         if (status.equals(Status.SATISFIABLE)) {
             Model model = solver.getModel();
             return Optional.of(getAssignment(model, marshaller));
         } else if (status.equals(Status.UNSATISFIABLE)) {
             return Optional.empty();
         } else {
-            throw new UnsupportedOperationException();
+            throw unknown(solver.getReasonUnknown());
         }
 
     }
 
     private Map<Variable, Constant> getAssignment(Model model, VariableMarshaller marshaller) {
+        metrics.record("queryVariables", marshaller.getVariables().size());
         HashMap<Variable, Constant> assignment = new HashMap<>();
         for (Variable variable: marshaller.getVariables()) {
             if (TypeInference.typeOf(variable).equals(IntType.TYPE)) {
@@ -190,27 +426,50 @@ public class Z3 implements Solver {
         return assignment;
     }
 
-    private class NodeTranslatorVisitor implements BottomUpVisitor {
+    /**
+     * Translates nodes to Z3 expressions. Translations of subterms are cached by node identity,
+     * so a translator must be used only for a single query.
+     */
+    private class NodeTranslatorVisitor implements BottomUpMemoVisitor {
 
         private Stack<Expr> exprs;
 
         private VariableMarshaller marshaller;
 
+        private IdentityHashMap<Node, Expr> cache;
+
         NodeTranslatorVisitor(VariableMarshaller marshaller) {
             this.marshaller = marshaller;
             this.exprs = new Stack<>();
+            this.cache = new IdentityHashMap<>();
         }
 
-        Expr getExpr() {
+        Expr translate(Node node) {
+            node.accept(this);
             assert exprs.size() == 1;
-            return exprs.peek();
+            return exprs.pop();
+        }
+
+        private void push(Node node, Expr expr) {
+            cache.put(node, expr);
+            exprs.push(expr);
+        }
+
+        @Override
+        public boolean alreadyVisited(Node node) {
+            return cache.containsKey(node);
+        }
+
+        @Override
+        public void visitAgain(Node node) {
+            exprs.push(cache.get(node));
         }
 
         private void processVariable(Context ctx, Variable variable) {
             if (TypeInference.typeOf(variable).equals(IntType.TYPE)) {
-                exprs.push(ctx.mkIntConst(marshaller.toString(variable)));
+                push(variable, ctx.mkIntConst(marshaller.toString(variable)));
             } else if (TypeInference.typeOf(variable).equals(BoolType.TYPE)) {
-                exprs.push(ctx.mkBoolConst(marshaller.toString(variable)));
+                push(variable, ctx.mkBoolConst(marshaller.toString(variable)));
             } else {
                 throw new UnsupportedOperationException();
             }
@@ -231,14 +490,14 @@ public class Z3 implements Solver {
         public void visit(Equal equal) {
             Expr right = exprs.pop();
             Expr left = exprs.pop();
-            exprs.push(ctx.mkEq(left, right));
+            push(equal, ctx.mkEq(left, right));
         }
 
         @Override
         public void visit(NotEqual notEqual) {
             Expr right = exprs.pop();
             Expr left = exprs.pop();
-            exprs.push(ctx.mkNot(ctx.mkEq(left, right)));
+            push(notEqual, ctx.mkNot(ctx.mkEq(left, right)));
         }
 
         @Override
@@ -250,104 +509,104 @@ public class Z3 implements Solver {
         public void visit(Add add) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkAdd(left, right));
+            push(add, ctx.mkAdd(left, right));
         }
 
         @Override
         public void visit(Sub sub) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkSub(left, right));
+            push(sub, ctx.mkSub(left, right));
         }
 
         @Override
         public void visit(Mult mult) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkMul(left, right));
+            push(mult, ctx.mkMul(left, right));
         }
 
         @Override
         public void visit(Div div) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkDiv(left, right));
+            push(div, ctx.mkDiv(left, right));
         }
 
         @Override
         public void visit(And and) {
             BoolExpr right = (BoolExpr) exprs.pop();
             BoolExpr left = (BoolExpr) exprs.pop();
-            exprs.push(ctx.mkAnd(left, right));
+            push(and, ctx.mkAnd(left, right));
         }
 
         @Override
         public void visit(Or or) {
             BoolExpr right = (BoolExpr) exprs.pop();
             BoolExpr left = (BoolExpr) exprs.pop();
-            exprs.push(ctx.mkOr(left, right));
+            push(or, ctx.mkOr(left, right));
         }
 
         @Override
         public void visit(Iff iff) {
             BoolExpr right = (BoolExpr) exprs.pop();
             BoolExpr left = (BoolExpr) exprs.pop();
-            exprs.push(ctx.mkIff(left, right));
+            push(iff, ctx.mkIff(left, right));
         }
 
         @Override
         public void visit(Impl impl) {
             BoolExpr right = (BoolExpr) exprs.pop();
             BoolExpr left = (BoolExpr) exprs.pop();
-            exprs.push(ctx.mkImplies(left, right));
+            push(impl, ctx.mkImplies(left, right));
         }
 
         @Override
         public void visit(Greater greater) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkGt(left, right));
+            push(greater, ctx.mkGt(left, right));
         }
 
         @Override
         public void visit(Less less) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkLt(left, right));
+            push(less, ctx.mkLt(left, right));
         }
 
         @Override
         public void visit(GreaterOrEqual greaterOrEqual) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkGe(left, right));
+            push(greaterOrEqual, ctx.mkGe(left, right));
         }
 
         @Override
         public void visit(LessOrEqual lessOrEqual) {
             ArithExpr right = (ArithExpr) exprs.pop();
             ArithExpr left = (ArithExpr) exprs.pop();
-            exprs.push(ctx.mkLe(left, right));
+            push(lessOrEqual, ctx.mkLe(left, right));
         }
 
         @Override
         public void visit(Minus minus) {
-            exprs.push(ctx.mkUnaryMinus((ArithExpr) exprs.pop()));
+            push(minus, ctx.mkUnaryMinus((ArithExpr) exprs.pop()));
         }
 
         @Override
         public void visit(Not not) {
-            exprs.push(ctx.mkNot((BoolExpr) exprs.pop()));
+            push(not, ctx.mkNot((BoolExpr) exprs.pop()));
         }
 
         @Override
         public void visit(IntConst intConst) {
-            exprs.push(ctx.mkInt(intConst.getValue()));
+            push(intConst, ctx.mkInt(intConst.getValue()));
         }
 
         @Override
         public void visit(BoolConst boolConst) {
-            exprs.push(ctx.mkBool(boolConst.getValue()));
+            push(boolConst, ctx.mkBool(boolConst.getValue()));
         }
 
         @Override
@@ -370,7 +629,7 @@ public class Z3 implements Solver {
             Expr elseBranch = exprs.pop();
             Expr thenBranch = exprs.pop();
             BoolExpr condition = (BoolExpr) exprs.pop();
-            exprs.push(ctx.mkITE(condition, thenBranch, elseBranch));
+            push(ite, ctx.mkITE(condition, thenBranch, elseBranch));
         }
 
         @Override
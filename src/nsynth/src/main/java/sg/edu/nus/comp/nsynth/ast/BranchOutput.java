@@ -3,6 +3,8 @@ package sg.edu.nus.comp.nsynth.ast;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by Sergey Mechtaev on 2/5/2016.
  *
@@ -33,8 +35,7 @@ public class BranchOutput extends Variable {
 
     public BranchOutput(Type type) {
         this.type = type;
-        objectCounter = classCounter;
-        classCounter++;
+        objectCounter = classCounter.getAndIncrement();
     }
 
     @Override
@@ -56,7 +57,7 @@ public class BranchOutput extends Variable {
         }
     }
 
-    private static int classCounter = 0;
+    private static final AtomicInteger classCounter = new AtomicInteger();
     private final int objectCounter;
 
     @Override
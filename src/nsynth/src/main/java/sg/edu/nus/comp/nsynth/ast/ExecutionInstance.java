@@ -40,6 +40,8 @@ public class ExecutionInstance extends Instance {
         }
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof ExecutionInstance))
@@ -48,6 +50,8 @@ public class ExecutionInstance extends Instance {
             return true;
 
         ExecutionInstance rhs = (ExecutionInstance) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(variable, rhs.variable).
                 append(index, rhs.index).
@@ -56,10 +60,13 @@ public class ExecutionInstance extends Instance {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(variable).
-                append(index).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(variable).
+                    append(index).
+                    toHashCode();
+        }
+        return hash;
     }
 
 
@@ -3,6 +3,8 @@ package sg.edu.nus.comp.nsynth.ast;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Variable used for CODIS, conflict learning, evaluation. Test-instantiated. Physical equality.
  */
@@ -33,8 +35,7 @@ public class ExpressionOutput extends Variable {
 
     public ExpressionOutput(Type type) {
         this.type = type;
-        this.objectCounter = classCounter;
-        classCounter++;
+        this.objectCounter = classCounter.getAndIncrement();
     }
 
     @Override
@@ -56,7 +57,7 @@ public class ExpressionOutput extends Variable {
         }
     }
 
-    private static int classCounter = 0;
+    private static final AtomicInteger classCounter = new AtomicInteger();
     private final int objectCounter;
 
     @Override
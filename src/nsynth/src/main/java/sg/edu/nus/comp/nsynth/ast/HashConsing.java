@@ -0,0 +1,20 @@
+package sg.edu.nus.comp.nsynth.ast;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Shares structurally equal nodes created by transformations and instantiations,
+ * so that identical subterms across tests, paths and instances are represented by one object.
+ * Canonical nodes are weakly referenced and thread-safe.
+ */
+public class HashConsing {
+
+    private static final Interner<Node> interner = Interners.newWeakInterner();
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Node> T intern(T node) {
+        return (T) interner.intern(node);
+    }
+
+}
@@ -22,7 +22,7 @@ public abstract class Node {
     public Node instantiate(TestCase testCase) {
         return Traverse.transform(this, n -> {
             if (n instanceof Variable && ((Variable)n).isTestInstantiable()) {
-                return new TestInstance((Variable)n, testCase);
+                return HashConsing.intern(new TestInstance((Variable)n, testCase));
             }
             return n;
         });
@@ -31,7 +31,7 @@ public abstract class Node {
     public Node instantiate(AngelixLocation loc) {
         return Traverse.transform(this, n -> {
             if (n instanceof Variable && ((Variable)n).isStatementInstantiable()) {
-                return new StatementInstance((Variable)n, loc);
+                return HashConsing.intern(new StatementInstance((Variable)n, loc));
             }
             return n;
         });
@@ -40,7 +40,7 @@ public abstract class Node {
     public Node instantiate(int instance) {
         return Traverse.transform(this, n -> {
             if (n instanceof Variable && ((Variable)n).isExecutionInstantiable()) {
-                return new ExecutionInstance((Variable)n, instance);
+                return HashConsing.intern(new ExecutionInstance((Variable)n, instance));
             }
             return n;
         });
@@ -56,17 +56,22 @@ public abstract class Node {
         });
     }
 
-    private static boolean seen;
+    /**
+     * @return false if instantiate(TestCase) does not change this node
+     */
+    public boolean hasTestInstantiableVariables() {
+        return Traverse.collectByType(this, Variable.class).stream().anyMatch(Variable::isTestInstantiable);
+    }
+
+    /**
+     * @return false if instantiate(int) does not change this node
+     */
+    public boolean hasExecutionInstantiableVariables() {
+        return Traverse.collectByType(this, Variable.class).stream().anyMatch(Variable::isExecutionInstantiable);
+    }
 
     public boolean contains(Node subnode) {
-        seen = false;
-        Traverse.transform(this, n -> {
-            if (n.equals(subnode)) {
-                seen = true;
-            }
-            return n;
-        });
-        return seen;
+        return Traverse.collectByType(this, Node.class).contains(subnode);
     }
 
     public static Node disjunction(List<? extends Node> clauses) {
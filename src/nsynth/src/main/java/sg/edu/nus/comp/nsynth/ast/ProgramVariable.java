@@ -46,6 +46,8 @@ public class ProgramVariable extends Variable {
         return new ProgramVariable(name, BoolType.TYPE);
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof ProgramVariable))
@@ -54,6 +56,8 @@ public class ProgramVariable extends Variable {
             return true;
 
         ProgramVariable rhs = (ProgramVariable) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(name, rhs.name).
                 append(type, rhs.type).
@@ -62,10 +66,13 @@ public class ProgramVariable extends Variable {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(name).
-                append(type).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(name).
+                    append(type).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -6,6 +6,8 @@ import sg.edu.nus.comp.nsynth.ast.BottomUpVisitor;
 import sg.edu.nus.comp.nsynth.ast.TopDownVisitor;
 import sg.edu.nus.comp.nsynth.ast.Variable;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by Sergey Mechtaev on 16/4/2016.
  *
@@ -24,12 +26,11 @@ public class Selector extends Variable {
         visitor.visit(this);
     }
 
-    private static int classCounter = 0;
+    private static final AtomicInteger classCounter = new AtomicInteger();
     private final int objectCounter;
 
     public Selector() {
-        objectCounter = classCounter;
-        classCounter++;
+        objectCounter = classCounter.getAndIncrement();
     }
 
     @Override
@@ -60,6 +60,8 @@ public class StatementInstance extends Instance {
         }
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof StatementInstance))
@@ -68,6 +70,8 @@ public class StatementInstance extends Instance {
             return true;
 
         StatementInstance rhs = (StatementInstance) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(variable, rhs.variable).
                 append(stmtId, rhs.stmtId).
@@ -76,10 +80,13 @@ public class StatementInstance extends Instance {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(variable).
-                append(stmtId).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(variable).
+                    append(stmtId).
+                    toHashCode();
+        }
+        return hash;
     }
 
 
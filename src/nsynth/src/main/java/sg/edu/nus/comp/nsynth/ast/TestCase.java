@@ -7,6 +7,7 @@ import sg.edu.nus.comp.nsynth.ast.theory.Equal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Sergey Mechtaev on 7/4/2016.
@@ -20,8 +21,7 @@ public abstract class TestCase {
     public abstract Type getOutputType();
 
     protected TestCase() {
-        objectCounter = classCounter;
-        classCounter++;
+        objectCounter = classCounter.getAndIncrement();
     }
 
     public static TestCase ofAssignment(Map<ProgramVariable, ? extends Node> assignment, Node outputValue) {
@@ -52,7 +52,7 @@ public abstract class TestCase {
         this.id = id;
     }
 
-    private static int classCounter = 0;
+    private static final AtomicInteger classCounter = new AtomicInteger();
     private final int objectCounter;
 
     @Override
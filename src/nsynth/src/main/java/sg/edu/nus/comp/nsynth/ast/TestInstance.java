@@ -46,6 +46,8 @@ public class TestInstance extends Instance {
     }
 
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof TestInstance))
@@ -54,6 +56,8 @@ public class TestInstance extends Instance {
             return true;
 
         TestInstance rhs = (TestInstance) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(variable, rhs.variable).
                 append(test, rhs.test).
@@ -62,10 +66,13 @@ public class TestInstance extends Instance {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(variable).
-                append(test).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(variable).
+                    append(test).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -3,6 +3,7 @@ package sg.edu.nus.comp.nsynth.ast;
 import sg.edu.nus.comp.nsynth.ast.theory.*;
 
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 /**
@@ -218,6 +219,26 @@ public class Traverse {
             return nodes.peek();
         }
 
+        // unchanged subtrees are reused, new nodes are hash-consed
+        private void transformBinary(BinaryOp op, BiFunction<Node, Node, Node> constructor) {
+            Node right = nodes.pop();
+            Node left = nodes.pop();
+            if (left == op.getLeft() && right == op.getRight()) {
+                nodes.push(function.apply(op));
+            } else {
+                nodes.push(function.apply(HashConsing.intern(constructor.apply(left, right))));
+            }
+        }
+
+        private void transformUnary(UnaryOp op, Function<Node, Node> constructor) {
+            Node arg = nodes.pop();
+            if (arg == op.getArg()) {
+                nodes.push(function.apply(op));
+            } else {
+                nodes.push(function.apply(HashConsing.intern(constructor.apply(arg))));
+            }
+        }
+
         @Override
         public void visit(ProgramVariable programVariable) {
             nodes.push(function.apply(programVariable));
@@ -236,16 +257,12 @@ public class Traverse {
 
         @Override
         public void visit(Equal equal) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Equal(left, right)));
+            transformBinary(equal, Equal::new);
         }
 
         @Override
         public void visit(NotEqual notEqual) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new NotEqual(left, right)));
+            transformBinary(notEqual, NotEqual::new);
         }
 
         @Override
@@ -255,98 +272,72 @@ public class Traverse {
 
         @Override
         public void visit(Add add) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Add(left, right)));
+            transformBinary(add, Add::new);
         }
 
         @Override
         public void visit(Sub sub) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Sub(left, right)));
+            transformBinary(sub, Sub::new);
         }
 
         @Override
         public void visit(Mult mult) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Mult(left, right)));
+            transformBinary(mult, Mult::new);
         }
 
         @Override
         public void visit(Div div) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Div(left, right)));
+            transformBinary(div, Div::new);
         }
 
         @Override
         public void visit(And and) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new And(left, right)));
+            transformBinary(and, And::new);
         }
 
         @Override
         public void visit(Or or) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Or(left, right)));
+            transformBinary(or, Or::new);
         }
 
         @Override
         public void visit(Iff iff) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Iff(left, right)));
+            transformBinary(iff, Iff::new);
         }
 
         @Override
         public void visit(Impl impl) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Impl(left, right)));
+            transformBinary(impl, Impl::new);
         }
 
         @Override
         public void visit(Greater greater) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Greater(left, right)));
+            transformBinary(greater, Greater::new);
         }
 
         @Override
         public void visit(Less less) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new Less(left, right)));
+            transformBinary(less, Less::new);
         }
 
         @Override
         public void visit(GreaterOrEqual greaterOrEqual) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new GreaterOrEqual(left, right)));
+            transformBinary(greaterOrEqual, GreaterOrEqual::new);
         }
 
         @Override
         public void visit(LessOrEqual lessOrEqual) {
-            Node right = nodes.pop();
-            Node left = nodes.pop();
-            nodes.push(function.apply(new LessOrEqual(left, right)));
+            transformBinary(lessOrEqual, LessOrEqual::new);
         }
 
         @Override
         public void visit(Minus minus) {
-            Node arg = nodes.pop();
-            nodes.push(function.apply(new Minus(arg)));
+            transformUnary(minus, Minus::new);
         }
 
         @Override
         public void visit(Not not) {
-            Node arg = nodes.pop();
-            nodes.push(function.apply(new Not(arg)));
+            transformUnary(not, Not::new);
         }
 
         @Override
@@ -379,7 +370,11 @@ public class Traverse {
             Node elseBranch = nodes.pop();
             Node thenBranch = nodes.pop();
             Node condition = nodes.pop();
-            nodes.push(function.apply(new ITE(condition, thenBranch, elseBranch)));
+            if (condition == ite.getCondition() && thenBranch == ite.getThenBranch() && elseBranch == ite.getElseBranch()) {
+                nodes.push(function.apply(ite));
+            } else {
+                nodes.push(function.apply(HashConsing.intern(new ITE(condition, thenBranch, elseBranch))));
+            }
         }
 
         @Override
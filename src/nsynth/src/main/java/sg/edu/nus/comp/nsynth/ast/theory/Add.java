@@ -59,6 +59,8 @@ public class Add extends BinaryOp {
         return result;
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Add))
@@ -67,6 +69,8 @@ public class Add extends BinaryOp {
             return true;
 
         Add rhs = (Add) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(left, rhs.left).
                 append(right, rhs.right).
@@ -75,10 +79,13 @@ public class Add extends BinaryOp {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(left).
-                append(right).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(left).
+                    append(right).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -60,6 +60,8 @@ public class And extends BinaryOp {
         return result;
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof And))
@@ -68,6 +70,8 @@ public class And extends BinaryOp {
             return true;
 
         And rhs = (And) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(left, rhs.left).
                 append(right, rhs.right).
@@ -76,10 +80,13 @@ public class And extends BinaryOp {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(left).
-                append(right).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(left).
+                    append(right).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
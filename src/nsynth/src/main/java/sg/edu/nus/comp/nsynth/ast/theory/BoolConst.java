@@ -15,7 +15,7 @@ public class BoolConst extends Constant {
     public static BoolConst FALSE = new BoolConst(false);
 
     public static BoolConst of(boolean value) {
-        return new BoolConst(value);
+        return value ? TRUE : FALSE;
     }
 
     public boolean getValue() {
@@ -60,6 +60,8 @@ public class Div extends BinaryOp {
         return result;
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Div))
@@ -68,6 +70,8 @@ public class Div extends BinaryOp {
             return true;
 
         Div rhs = (Div) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(left, rhs.left).
                 append(right, rhs.right).
@@ -76,10 +80,13 @@ public class Div extends BinaryOp {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(left).
-                append(right).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(left).
+                    append(right).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -61,6 +61,8 @@ public class Equal extends BinaryOp {
         return result;
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Equal))
@@ -69,6 +71,8 @@ public class Equal extends BinaryOp {
             return true;
 
         Equal rhs = (Equal) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(left, rhs.left).
                 append(right, rhs.right).
@@ -77,10 +81,13 @@ public class Equal extends BinaryOp {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(left).
-                append(right).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(left).
+                    append(right).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -62,6 +62,8 @@ public class ITE extends Application {
         }
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof ITE))
@@ -70,6 +72,8 @@ public class ITE extends Application {
             return true;
 
         ITE rhs = (ITE) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(condition, rhs.condition).
                 append(thenBranch, rhs.thenBranch).
@@ -79,11 +83,14 @@ public class ITE extends Application {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(condition).
-                append(thenBranch).
-                append(elseBranch).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(condition).
+                    append(thenBranch).
+                    append(elseBranch).
+                    toHashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -14,7 +14,20 @@ public class IntConst extends Constant {
         return value;
     }
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IntConst[] cache = new IntConst[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new IntConst(CACHE_LOW + i);
+        }
+    }
+
     public static IntConst of(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return cache[value - CACHE_LOW];
+        }
         return new IntConst(value);
     }
 
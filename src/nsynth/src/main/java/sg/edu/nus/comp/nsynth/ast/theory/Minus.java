@@ -55,6 +55,8 @@ public class Minus extends UnaryOp {
         return "-" + arg.toString();
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Minus))
@@ -63,6 +65,8 @@ public class Minus extends UnaryOp {
             return true;
 
         Minus rhs = (Minus) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(arg, rhs.arg).
                 isEquals();
@@ -70,9 +74,12 @@ public class Minus extends UnaryOp {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(arg).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(arg).
+                    toHashCode();
+        }
+        return hash;
     }
 
 
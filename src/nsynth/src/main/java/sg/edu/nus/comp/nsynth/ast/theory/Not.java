@@ -56,6 +56,8 @@ public class Not extends UnaryOp {
         return "!" + arg.toString();
     }
 
+    private int hash = 0;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Not))
@@ -64,6 +66,8 @@ public class Not extends UnaryOp {
             return true;
 
         Not rhs = (Not) obj;
+        if (hashCode() != rhs.hashCode())
+            return false;
         return new EqualsBuilder().
                 append(arg, rhs.arg).
                 isEquals();
@@ -71,9 +75,12 @@ public class Not extends UnaryOp {
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(arg).
-                toHashCode();
+        if (hash == 0) {
+            hash = new HashCodeBuilder(17, 31).
+                    append(arg).
+                    toHashCode();
+        }
+        return hash;
     }
 
 
@@ -64,6 +64,123 @@ public class TestAngelixSynthesis {
         Assert.assertEquals(new Sub(x, y), node);
     }
 
+    @Test
+    public void testPortfolioPrefersFirstLevel() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        Map<AngelixLocation, Multiset<Node>> componentsMap = new HashMap<>();
+        componentsMap.put(loc1, components);
+
+        AngelicForest angelicForest = null;
+        try {
+            InputStream is = this.getClass().getResourceAsStream("af1.json");
+            angelicForest = AngelicForest.parse(is);
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        original.put(loc1, Expression.app(Library.ADD, args));
+
+        AngelixSynthesis portfolioSynthesizer = new AngelixSynthesis();
+        portfolioSynthesizer.enablePortfolio();
+        Optional<Map<AngelixLocation, Node>> result =
+                portfolioSynthesizer.repair(original, angelicForest, componentsMap,
+                        Arrays.asList(SynthesisLevel.LEAVES, SynthesisLevel.OPERATORS, SynthesisLevel.SUBSTITUTION));
+        assertTrue(result.isPresent());
+        Node node = result.get().get(loc1);
+        Assert.assertEquals(new Sub(x, y), node);
+    }
+
+    @Test
+    public void testIncrementalLevels() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        Map<AngelixLocation, Multiset<Node>> componentsMap = new HashMap<>();
+        componentsMap.put(loc1, components);
+
+        AngelicForest angelicForest = null;
+        try {
+            InputStream is = this.getClass().getResourceAsStream("af1.json");
+            angelicForest = AngelicForest.parse(is);
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        original.put(loc1, Expression.app(Library.ADD, args));
+
+        AngelixSynthesis incrementalSynthesizer = new AngelixSynthesis();
+        incrementalSynthesizer.enableIncrementalLevels();
+        // EMPTY and LEAVES fail, so OPERATORS is found by the third query of the SUBSTITUTION encoding
+        Optional<Map<AngelixLocation, Node>> result =
+                incrementalSynthesizer.repair(original, angelicForest, componentsMap,
+                        Arrays.asList(SynthesisLevel.EMPTY, SynthesisLevel.LEAVES, SynthesisLevel.OPERATORS,
+                                SynthesisLevel.SUBSTITUTION));
+        assertTrue(result.isPresent());
+        Node node = result.get().get(loc1);
+        Assert.assertEquals(new Sub(x, y), node);
+    }
+
+    @Test
+    public void testIncrementalForest() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        Map<AngelixLocation, Multiset<Node>> componentsMap = new HashMap<>();
+        componentsMap.put(loc1, components);
+
+        AngelicForest angelicForest = null;
+        try {
+            InputStream is = this.getClass().getResourceAsStream("af1.json");
+            angelicForest = AngelicForest.parse(is);
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Map<AngelixTest, List<AngelicPath>> firstPaths = new HashMap<>();
+        for (Map.Entry<AngelixTest, List<AngelicPath>> entry : angelicForest.getPaths().entrySet()) {
+            if (entry.getKey().getName().equals("ti1")) {
+                firstPaths.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        original.put(loc1, Expression.app(Library.ADD, args));
+
+        AngelixSynthesis incrementalSynthesizer = new AngelixSynthesis();
+        incrementalSynthesizer.enableIncrementalForest();
+        Metrics metrics = new Metrics();
+        incrementalSynthesizer.setMetrics(metrics);
+        Optional<Map<AngelixLocation, Node>> first =
+                incrementalSynthesizer.repair(original, new AngelicForest(firstPaths), componentsMap, SynthesisLevel.OPERATORS);
+        assertTrue(first.isPresent());
+        Optional<Map<AngelixLocation, Node>> result =
+                incrementalSynthesizer.repair(original, angelicForest, componentsMap, SynthesisLevel.OPERATORS);
+        assertTrue(result.isPresent());
+        Assert.assertEquals(new Sub(x, y), result.get().get(loc1));
+        assertEquals(1, metrics.getCount("reusedSessions"));
+    }
+
     @Test
     public void testOperatorMultipathSingleline() {
         Multiset<Node> components = HashMultiset.create();
@@ -96,6 +213,79 @@ public class TestAngelixSynthesis {
         Assert.assertEquals(new Sub(x, y), node);
     }
 
+    @Test
+    public void testCegisMultipathSingleline() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        Map<AngelixLocation, Multiset<Node>> componentsMap = new HashMap<>();
+        componentsMap.put(loc1, components);
+
+        AngelicForest angelicForest = null;
+        try {
+            InputStream is = this.getClass().getResourceAsStream("af2.json");
+            angelicForest = AngelicForest.parse(is);
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        original.put(loc1, Expression.app(Library.ADD, args));
+
+        AngelixSynthesis cegisSynthesizer = new AngelixSynthesis();
+        cegisSynthesizer.enableCegis();
+        Optional<Map<AngelixLocation, Node>> result =
+                cegisSynthesizer.repair(original, angelicForest, componentsMap, SynthesisLevel.OPERATORS);
+        assertTrue(result.isPresent());
+        Node node = result.get().get(loc1);
+        Assert.assertEquals(new Sub(x, y), node);
+    }
+
+    @Test
+    public void testWeightedMaxsatMultipathSingleline() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        Map<AngelixLocation, Multiset<Node>> componentsMap = new HashMap<>();
+        componentsMap.put(loc1, components);
+
+        AngelicForest angelicForest = null;
+        try {
+            InputStream is = this.getClass().getResourceAsStream("af2.json");
+            angelicForest = AngelicForest.parse(is);
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        original.put(loc1, Expression.app(Library.ADD, args));
+
+        for (boolean cegis : new boolean[] { false, true }) {
+            AngelixSynthesis weightedSynthesizer = new AngelixSynthesis();
+            weightedSynthesizer.enableWeightedMaxsat("maxres");
+            if (cegis) {
+                weightedSynthesizer.enableCegis();
+            }
+            Optional<Map<AngelixLocation, Node>> result =
+                    weightedSynthesizer.repair(original, angelicForest, componentsMap, SynthesisLevel.OPERATORS);
+            assertTrue(result.isPresent());
+            Node node = result.get().get(loc1);
+            Assert.assertEquals(new Sub(x, y), node);
+        }
+    }
+
     @Test
     public void testOperatorMultiline() {
         Multiset<Node> components = HashMultiset.create();
@@ -177,6 +367,48 @@ public class TestAngelixSynthesis {
         Assert.assertEquals(new GreaterOrEqual(v, IntConst.of(1)), result.get().get(loc2));
     }
 
+    @Test
+    public void testParallelEncodingMultiline() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(v);
+        components.add(IntConst.of(1));
+        components.add(Library.GT);
+        components.add(Library.GE);
+        Map<AngelixLocation, Multiset<Node>> componentsMap = new HashMap<>();
+        componentsMap.put(loc1, components);
+        componentsMap.put(loc2, components);
+
+        AngelicForest angelicForest = null;
+        try {
+            InputStream is = this.getClass().getResourceAsStream("af4.json");
+            angelicForest = AngelicForest.parse(is);
+            is.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.GT.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.GT.getRight(), Expression.leaf(y));
+        original.put(loc1, Expression.app(Library.GT, args));
+
+        Map<Hole, Expression> args2 = new HashMap<>();
+        args2.put((Hole) Library.GT.getLeft(), Expression.leaf(v));
+        args2.put((Hole) Library.GT.getRight(), Expression.leaf(IntConst.of(1)));
+        original.put(loc2, Expression.app(Library.GT, args2));
+
+        AngelixSynthesis parallelSynthesizer = new AngelixSynthesis();
+        parallelSynthesizer.enableParallelEncoding();
+        Optional<Map<AngelixLocation, Node>> result =
+                parallelSynthesizer.repair(original, angelicForest, componentsMap, SynthesisLevel.OPERATORS);
+        assertTrue(result.isPresent());
+        Assert.assertEquals(new GreaterOrEqual(x, y), result.get().get(loc1));
+        Assert.assertEquals(new GreaterOrEqual(v, IntConst.of(1)), result.get().get(loc2));
+    }
+
     @Test
     public void testConditional() {
         Multiset<Node> components = HashMultiset.create();
@@ -0,0 +1,109 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.Node;
+import sg.edu.nus.comp.nsynth.ast.Selector;
+import sg.edu.nus.comp.nsynth.ast.Traverse;
+import sg.edu.nus.comp.nsynth.ast.Variable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks encodings by enumerating all assignments of the bits and auxiliary selectors
+ */
+public class TestCardinality {
+
+    private static List<Selector> bits(int n) {
+        List<Selector> bits = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            bits.add(new Selector());
+        }
+        return bits;
+    }
+
+    /**
+     * @return whether clauses are satisfiable for each assignment of bits (indexed by bitmask)
+     */
+    private static boolean[] satisfiable(List<Selector> bits, List<Node> clauses) {
+        Set<Variable> variables = new LinkedHashSet<>(bits);
+        for (Node clause : clauses) {
+            variables.addAll(Traverse.collectByType(clause, Selector.class));
+        }
+        List<Variable> table = new ArrayList<>(variables);
+        assertTrue(table.size() <= 20);
+        List<Evaluator> evaluators = new ArrayList<>();
+        for (Node clause : clauses) {
+            evaluators.add(Evaluator.compile(clause, table));
+        }
+        boolean[] result = new boolean[1 << bits.size()];
+        int[] env = new int[table.size()];
+        for (long assignment = 0; assignment < (1L << table.size()); assignment++) {
+            for (int i = 0; i < env.length; i++) {
+                env[i] = (int) ((assignment >> i) & 1);
+            }
+            boolean satisfied = true;
+            for (Evaluator evaluator : evaluators) {
+                if (evaluator.evaluate(env) == 0) {
+                    satisfied = false;
+                    break;
+                }
+            }
+            if (satisfied) {
+                result[(int) (assignment & ((1 << bits.size()) - 1))] = true;
+            }
+        }
+        return result;
+    }
+
+    private static void checkAtMostK(BiFunction<Integer, List<Selector>, List<Node>> encoding, int maxN, int maxK) {
+        for (int n = 1; n <= maxN; n++) {
+            for (int k = 1; k <= maxK; k++) {
+                List<Selector> bits = bits(n);
+                boolean[] satisfiable = satisfiable(bits, encoding.apply(k, bits));
+                for (int mask = 0; mask < satisfiable.length; mask++) {
+                    assertEquals("n=" + n + " k=" + k + " mask=" + mask,
+                            Integer.bitCount(mask) <= k, satisfiable[mask]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSequentialCounter() {
+        checkAtMostK(Cardinality.SequentialCounter::atMostK, 5, 3);
+    }
+
+    @Test
+    public void testTotalizer() {
+        checkAtMostK(Cardinality.Totalizer::atMostK, 5, 3);
+    }
+
+    @Test
+    public void testCommander() {
+        checkAtMostK((k, bits) -> Cardinality.Commander.atMostOne(bits), 9, 1);
+    }
+
+    @Test
+    public void testAutomatic() {
+        checkAtMostK(Cardinality::atMostK, 6, 3);
+        List<Selector> bits = bits(3);
+        boolean[] satisfiable = satisfiable(bits, Cardinality.atMostK(0, bits));
+        for (int mask = 0; mask < satisfiable.length; mask++) {
+            assertEquals(mask == 0, satisfiable[mask]);
+        }
+    }
+
+    @Test
+    public void testAutomaticIsSmallerThanSortingNetwork() {
+        List<Selector> bits = bits(64);
+        assertTrue(Cardinality.atMostK(1, bits).size() < Cardinality.SortingNetwork.atMostK(1, bits).size());
+        assertTrue(Cardinality.atMostK(1, bits(4)).size() <= Cardinality.Pairwise.atMostOne(bits(4)).size());
+    }
+}
@@ -0,0 +1,73 @@
+package sg.edu.nus.comp.nsynth;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestEncodingCache {
+
+    private final ProgramVariable x = ProgramVariable.mkInt("x");
+    private final ProgramVariable y = ProgramVariable.mkInt("y");
+
+    private final AngelixLocation loc1 = new AngelixLocation(1, 1, 1, 1);
+    private final AngelixLocation loc2 = new AngelixLocation(2, 2, 2, 2);
+
+    private Expression original() {
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        return Expression.app(Library.ADD, args);
+    }
+
+    private Multiset<Node> components() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        return components;
+    }
+
+    @Test
+    public void testHit() {
+        EncodingCache cache = new EncodingCache(10);
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        Object first = cache.encode(encoder, loc1, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        Object second = cache.encode(encoder, loc1, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testKeyIncludesLocationAndLevel() {
+        EncodingCache cache = new EncodingCache(10);
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        Object first = cache.encode(encoder, loc1, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        Object otherLocation = cache.encode(encoder, loc2, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        Object otherLevel = cache.encode(encoder, loc1, new RepairShape(original(), SynthesisLevel.LEAVES), components());
+        assertNotSame(first, otherLocation);
+        assertNotSame(first, otherLevel);
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        EncodingCache cache = new EncodingCache(1);
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        Object first = cache.encode(encoder, loc1, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        cache.encode(encoder, loc2, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        Object again = cache.encode(encoder, loc1, new RepairShape(original(), SynthesisLevel.OPERATORS), components());
+        assertNotSame(first, again);
+        assertEquals(0, cache.getHits());
+    }
+
+}
@@ -0,0 +1,93 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.*;
+import sg.edu.nus.comp.nsynth.ast.theory.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class TestEvaluator {
+
+    private final ProgramVariable x = ProgramVariable.mkInt("x");
+    private final ProgramVariable y = ProgramVariable.mkInt("y");
+    private final ProgramVariable b = ProgramVariable.mkBool("b");
+
+    @Test
+    public void testArithmetic() {
+        Node node = new Sub(new Mult(x, IntConst.of(3)), new Minus(y));
+        Map<ProgramVariable, Constant> assignment = new HashMap<>();
+        assignment.put(x, IntConst.of(2));
+        assignment.put(y, IntConst.of(5));
+        assertEquals(Optional.of(IntConst.of(11)), Evaluator.compile(node).evaluate(assignment));
+    }
+
+    @Test
+    public void testBoolean() {
+        Node node = new Or(new And(b, new Greater(x, y)), new Not(new Iff(b, new Equal(x, y))));
+        Map<ProgramVariable, Constant> assignment = new HashMap<>();
+        assignment.put(x, IntConst.of(1));
+        assignment.put(y, IntConst.of(0));
+        assignment.put(b, BoolConst.TRUE);
+        assertEquals(Optional.of(BoolConst.TRUE), Evaluator.compile(node).evaluate(assignment));
+        assignment.put(b, BoolConst.FALSE);
+        assertEquals(Optional.of(BoolConst.FALSE), Evaluator.compile(node).evaluate(assignment));
+    }
+
+    @Test
+    public void testITE() {
+        Node node = new ITE(new Less(x, y), y, x);
+        Evaluator evaluator = Evaluator.compile(node, Arrays.asList(x, y));
+        assertEquals(4, evaluator.evaluate(new int[] {3, 4}));
+        assertEquals(7, evaluator.evaluate(new int[] {7, 4}));
+    }
+
+    @Test
+    public void testEuclideanDivision() {
+        Evaluator evaluator = Evaluator.compile(new Div(x, y), Arrays.asList(x, y));
+        assertEquals(2, evaluator.evaluate(new int[] {7, 3}));
+        assertEquals(-3, evaluator.evaluate(new int[] {-7, 3}));
+        assertEquals(-2, evaluator.evaluate(new int[] {7, -3}));
+        assertEquals(3, evaluator.evaluate(new int[] {-7, -3}));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testDivisionByZero() {
+        Evaluator evaluator = Evaluator.compile(new Div(x, y), Arrays.asList(x, y));
+        evaluator.evaluate(new int[] {1, 0});
+    }
+
+    @Test
+    public void testOverflow() {
+        Evaluator mult = Evaluator.compile(new Mult(x, y), Arrays.asList(x, y));
+        assertEquals(1 << 30, mult.evaluate(new int[] {1 << 15, 1 << 15}));
+        assertOverflows(mult, new int[] {1 << 16, 1 << 16});
+        assertOverflows(Evaluator.compile(new Add(x, y), Arrays.asList(x, y)), new int[] {Integer.MAX_VALUE, 1});
+        assertOverflows(Evaluator.compile(new Sub(x, y), Arrays.asList(x, y)), new int[] {Integer.MIN_VALUE, 1});
+        assertOverflows(Evaluator.compile(new Minus(x), Arrays.asList(x)), new int[] {Integer.MIN_VALUE});
+        assertOverflows(Evaluator.compile(new Div(x, y), Arrays.asList(x, y)), new int[] {Integer.MIN_VALUE, -1});
+    }
+
+    private void assertOverflows(Evaluator evaluator, int[] env) {
+        try {
+            evaluator.evaluate(env);
+            fail("overflow is not detected");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnassigned() {
+        Map<ProgramVariable, Constant> assignment = new HashMap<>();
+        assignment.put(x, IntConst.of(1));
+        assertFalse(Evaluator.compile(new Add(x, y)).evaluate(assignment).isPresent());
+    }
+
+}
@@ -0,0 +1,59 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.Node;
+import sg.edu.nus.comp.nsynth.ast.ProgramVariable;
+import sg.edu.nus.comp.nsynth.ast.theory.*;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TestForestGenerator {
+
+    private final ProgramVariable x = ProgramVariable.mkInt("x");
+    private final ProgramVariable y = ProgramVariable.mkInt("y");
+    private final AngelixLocation loc = new AngelixLocation(1, 2, 1, 7);
+
+    private ForestGenerator generator(long seed) {
+        return new ForestGenerator(seed)
+                .setTests(5)
+                .setPathsPerTest(2)
+                .setInstancesPerPath(3)
+                .addLocation(loc, new Add(x, y), new Sub(x, y));
+    }
+
+    @Test
+    public void testReproducible() {
+        assertEquals(generator(1).generate(), generator(1).generate());
+        assertNotEquals(generator(1).generate(), generator(2).generate());
+        assertEquals(generator(1).generateForest().getPaths(), generator(1).generateForest().getPaths());
+        assertNotEquals(generator(1).generateForest().getPaths(), generator(2).generateForest().getPaths());
+    }
+
+    @Test
+    public void testAngelicValues() {
+        AngelicForest forest = generator(3).generateForest();
+        assertEquals(5, forest.getPaths().size());
+        for (List<AngelicPath> paths : forest.getPaths().values()) {
+            assertEquals(2, paths.size());
+            for (AngelicPath path : paths) {
+                assertEquals(3, path.getInstanceCount(loc));
+                for (int i = 0; i < 3; i++) {
+                    List<ProgramVariable> variables = path.getContextVariables(loc, i);
+                    int xValue = Evaluator.toInt(path.getContextValue(loc, i, variables.indexOf(x)));
+                    int yValue = Evaluator.toInt(path.getContextValue(loc, i, variables.indexOf(y)));
+                    assertEquals(IntConst.of(xValue - yValue), path.getAngelicValue(loc, i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSmtRoundTrip() {
+        Node node = new ITE(new Greater(x, IntConst.of(-1)), new Minus(y), new Div(x, IntConst.of(2)));
+        Node parsed = ExpressionConverter.convert(SMTParser.parse("(assert " + ForestGenerator.toSmt(node) + ")")).getSemantics();
+        assertEquals(ForestGenerator.toSmt(node), ForestGenerator.toSmt(parsed));
+    }
+}
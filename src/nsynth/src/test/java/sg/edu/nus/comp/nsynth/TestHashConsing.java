@@ -0,0 +1,40 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.*;
+import sg.edu.nus.comp.nsynth.ast.theory.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestHashConsing {
+
+    private final ProgramVariable x = ProgramVariable.mkInt("x");
+    private final ProgramVariable y = ProgramVariable.mkInt("y");
+    private final Selector s = new Selector();
+
+    @Test
+    public void testInstantiationShared() {
+        Node node = new And(s, new Greater(new Add(x, y), IntConst.of(1)));
+        AngelixLocation loc = new AngelixLocation(1, 2, 3, 4);
+        Node first = node.instantiate(loc);
+        Node second = node.instantiate(loc);
+        assertEquals(first, second);
+        assertSame(((And) first).getRight(), ((And) second).getRight());
+    }
+
+    @Test
+    public void testUnchangedSubtreeReused() {
+        Node unchanged = new Add(x, IntConst.of(1));
+        Node node = new Less(unchanged, y);
+        Map<ProgramVariable, Node> mapping = new HashMap<>();
+        mapping.put(y, IntConst.of(2));
+        Node substituted = Traverse.substitute(node, mapping);
+        assertEquals(new Less(new Add(x, IntConst.of(1)), IntConst.of(2)), substituted);
+        assertSame(unchanged, ((Less) substituted).getLeft());
+    }
+
+}
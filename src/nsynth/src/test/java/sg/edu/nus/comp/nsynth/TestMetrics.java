@@ -0,0 +1,35 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.junit.Test;
+
+import javax.json.JsonObject;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestMetrics {
+
+    @Test
+    public void testCountersFromThreads() {
+        Metrics metrics = new Metrics();
+        IntStream.range(0, 1000).parallel().forEach(i -> metrics.count("clauses", 2));
+        assertEquals(2000, metrics.getCount("clauses"));
+        assertEquals(0, metrics.getCount("missing"));
+    }
+
+    @Test
+    public void testJson() {
+        Metrics metrics = new Metrics();
+        int result = metrics.time("encoding", () -> 42);
+        assertEquals(42, result);
+        metrics.record("unsatCoreSize", 3);
+        metrics.record("unsatCoreSize", 1);
+        assertEquals(Arrays.asList(3L, 1L), metrics.getSeries("unsatCoreSize"));
+        JsonObject json = metrics.toJson();
+        assertTrue(json.getJsonObject("times").containsKey("encoding"));
+        assertEquals(2, json.getJsonObject("series").getJsonArray("unsatCoreSize").size());
+    }
+
+}
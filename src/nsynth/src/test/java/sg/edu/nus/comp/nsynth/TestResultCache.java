@@ -0,0 +1,74 @@
+package sg.edu.nus.comp.nsynth;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestResultCache {
+
+    private final ProgramVariable x = ProgramVariable.mkInt("x");
+    private final ProgramVariable y = ProgramVariable.mkInt("y");
+
+    private final AngelixLocation loc1 = new AngelixLocation(0, 0, 0, 1);
+
+    private AngelicForest parse(String resource) throws IOException {
+        InputStream is = this.getClass().getResourceAsStream(resource);
+        AngelicForest angelicForest = AngelicForest.parse(is);
+        is.close();
+        return angelicForest;
+    }
+
+    private Map<AngelixLocation, Expression> original() {
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        Map<AngelixLocation, Expression> original = new HashMap<>();
+        original.put(loc1, Expression.app(Library.ADD, args));
+        return original;
+    }
+
+    @Test
+    public void testFingerprint() throws IOException {
+        List<SynthesisLevel> levels = Collections.singletonList(SynthesisLevel.OPERATORS);
+        List<Object> settings = new AngelixSynthesis().getSettings();
+        String first = ResultCache.fingerprint(original(), parse("af2.json"), levels, settings);
+        String second = ResultCache.fingerprint(original(), parse("af2.json"), levels, settings);
+        assertEquals(first, second);
+        assertNotEquals(first, ResultCache.fingerprint(original(), parse("af2.json"),
+                Collections.singletonList(SynthesisLevel.LEAVES), settings));
+        assertNotEquals(first, ResultCache.fingerprint(original(), parse("af1.json"), levels, settings));
+        AngelixSynthesis weighted = new AngelixSynthesis();
+        weighted.enableWeightedMaxsat("maxres");
+        assertNotEquals(first, ResultCache.fingerprint(original(), parse("af2.json"), levels, weighted.getSettings()));
+        AngelixSynthesis incremental = new AngelixSynthesis();
+        incremental.enableIncrementalForest();
+        assertNotEquals(first, ResultCache.fingerprint(original(), parse("af2.json"), levels, incremental.getSettings()));
+    }
+
+    @Test
+    public void testStoreAndLookup() throws IOException {
+        ResultCache cache = new ResultCache(Files.createTempDirectory("nsynth").resolve("cache"));
+        assertFalse(cache.lookup("abc").isPresent());
+        cache.store("abc", "SUCCESS", Arrays.asList("0-0-0-1", "(x + y)", "(x - y)"));
+        cache.store("def", "FAIL", Collections.emptyList());
+        Optional<Pair<String, List<String>>> success = cache.lookup("abc");
+        assertTrue(success.isPresent());
+        assertEquals("SUCCESS", success.get().getLeft());
+        assertEquals(Arrays.asList("0-0-0-1", "(x + y)", "(x - y)"), success.get().getRight());
+        Optional<Pair<String, List<String>>> fail = cache.lookup("def");
+        assertTrue(fail.isPresent());
+        assertEquals("FAIL", fail.get().getLeft());
+        assertTrue(fail.get().getRight().isEmpty());
+    }
+
+}
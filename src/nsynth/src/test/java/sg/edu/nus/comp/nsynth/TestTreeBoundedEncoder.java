@@ -0,0 +1,247 @@
+package sg.edu.nus.comp.nsynth;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.junit.Test;
+import sg.edu.nus.comp.nsynth.ast.*;
+import sg.edu.nus.comp.nsynth.ast.theory.Add;
+import sg.edu.nus.comp.nsynth.ast.theory.BoolConst;
+import sg.edu.nus.comp.nsynth.ast.theory.Equal;
+import sg.edu.nus.comp.nsynth.ast.theory.Impl;
+import sg.edu.nus.comp.nsynth.ast.theory.IntConst;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTreeBoundedEncoder {
+
+    private static final int THREADS = 8;
+    private static final int ENCODINGS = 200;
+
+    private final ProgramVariable x = ProgramVariable.mkInt("x");
+    private final ProgramVariable y = ProgramVariable.mkInt("y");
+
+    @Test
+    public void testParallelEncoding() throws Exception {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(IntConst.of(1));
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        components.add(Library.ITE);
+        components.add(Library.GT);
+
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        Shape shape = new BoundedShape(3, IntType.TYPE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo>>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < ENCODINGS; i++) {
+                futures.add(executor.submit(() -> encoder.encode(shape, components)));
+            }
+
+            Set<Selector> allSelectors = new HashSet<>();
+            Set<Variable> roots = new HashSet<>();
+            int selectorCount = 0;
+            Integer clauseCount = null;
+            for (Future<Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo>> future : futures) {
+                Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding = future.get();
+                List<Node> hard = encoding.getMiddle().getLeft();
+                if (clauseCount == null) {
+                    clauseCount = hard.size();
+                }
+                assertEquals((int) clauseCount, hard.size());
+                Set<Selector> selectors = new HashSet<>();
+                for (Node clause : hard) {
+                    selectors.addAll(Traverse.collectByType(clause, Selector.class));
+                }
+                selectorCount += selectors.size();
+                allSelectors.addAll(selectors);
+                roots.add(encoding.getLeft());
+            }
+            // every encoding has its own selectors and output
+            assertEquals(selectorCount, allSelectors.size());
+            assertEquals(ENCODINGS, roots.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelTestCaseIdentity() {
+        Map<ProgramVariable, Node> assignment = new HashMap<>();
+        assignment.put(x, IntConst.of(1));
+        List<TestCase> tests = IntStream.range(0, ENCODINGS * THREADS).parallel()
+                .mapToObj(i -> TestCase.ofAssignment(assignment, IntConst.of(i)))
+                .collect(Collectors.toList());
+        assertEquals(tests.size(), new HashSet<>(tests).size());
+    }
+
+    /**
+     * Enumerates selector assignments and values of outputs for x = 1, y = 2 and decodes satisfying ones
+     */
+    private Set<Node> decodeAll(TreeBoundedEncoder encoder, Multiset<Node> components) {
+        Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding =
+                encoder.encode(new BoundedShape(2, IntType.TYPE), components);
+        List<Node> hard = encoding.getMiddle().getLeft();
+        Set<Variable> variables = new LinkedHashSet<>();
+        for (Node clause : hard) {
+            variables.addAll(Traverse.collectByType(clause, Variable.class));
+        }
+        variables.remove(x);
+        variables.remove(y);
+        List<Variable> table = new ArrayList<>();
+        table.add(x);
+        table.add(y);
+        table.addAll(variables);
+        List<Evaluator> evaluators = hard.stream().map(c -> Evaluator.compile(c, table)).collect(Collectors.toList());
+
+        Set<Node> decoded = new HashSet<>();
+        int[] env = new int[table.size()];
+        env[0] = 1;
+        env[1] = 2;
+        enumerate(table, env, 2, evaluators, encoder, encoding, decoded);
+        return decoded;
+    }
+
+    private void enumerate(List<Variable> table,
+                           int[] env,
+                           int position,
+                           List<Evaluator> evaluators,
+                           TreeBoundedEncoder encoder,
+                           Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding,
+                           Set<Node> decoded) {
+        if (position == table.size()) {
+            for (Evaluator evaluator : evaluators) {
+                if (evaluator.evaluate(env) == 0) {
+                    return;
+                }
+            }
+            Map<Variable, Constant> assignment = new HashMap<>();
+            for (int i = 2; i < table.size(); i++) {
+                Variable variable = table.get(i);
+                assignment.put(variable, variable instanceof Selector ? BoolConst.of(env[i] != 0) : IntConst.of(env[i]));
+            }
+            decoded.add(encoder.decode(assignment, encoding.getLeft(), encoding.getRight()).getLeft().getSemantics());
+            return;
+        }
+        int max = table.get(position) instanceof Selector ? 1 : 4;
+        for (int value = 0; value <= max; value++) {
+            env[position] = value;
+            enumerate(table, env, position + 1, evaluators, encoder, encoding, decoded);
+        }
+    }
+
+    @Test
+    public void testSymmetryBreaking() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder(false);
+        Set<Node> all = decodeAll(encoder, components);
+        assertTrue(all.contains(new Add(x, y)));
+        assertTrue(all.contains(new Add(y, x)));
+
+        encoder.enableSymmetryBreaking();
+        Set<Node> broken = decodeAll(encoder, components);
+        assertTrue(broken.contains(new Add(x, y)) ^ broken.contains(new Add(y, x)));
+        assertTrue(broken.contains(new Add(x, x)));
+        assertTrue(broken.contains(new Add(y, y)));
+        assertEquals(all.size() - 1, broken.size());
+    }
+
+    /**
+     * Components of unrestricted choices for output, i.e. selectors s with clause s => output = ...
+     */
+    private Set<Node> allowed(Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding,
+                              Variable output,
+                              List<Selector> restricted) {
+        Set<Node> allowed = new HashSet<>();
+        for (Node clause : encoding.getMiddle().getLeft()) {
+            if (clause instanceof Impl && ((Impl) clause).getLeft() instanceof Selector
+                    && ((Impl) clause).getRight() instanceof Equal
+                    && ((Equal) ((Impl) clause).getRight()).getLeft().equals(output)
+                    && !restricted.contains(((Impl) clause).getLeft())) {
+                allowed.add(encoding.getRight().getSelectedComponent().get(((Impl) clause).getLeft()));
+            }
+        }
+        return allowed;
+    }
+
+    @Test
+    public void testRestrictedSelectors() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        components.add(Library.ADD);
+        components.add(Library.SUB);
+        components.add(Library.MINUS);
+
+        Map<Hole, Expression> args = new HashMap<>();
+        args.put((Hole) Library.ADD.getLeft(), Expression.leaf(x));
+        args.put((Hole) Library.ADD.getRight(), Expression.leaf(y));
+        RepairShape shape = new RepairShape(Expression.app(Library.ADD, args), SynthesisLevel.SUBSTITUTION);
+
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding =
+                encoder.encode(shape, components);
+        Variable root = encoding.getLeft();
+        Variable left = null;
+        for (Node clause : encoding.getMiddle().getLeft()) {
+            if (clause instanceof Impl && ((Impl) clause).getRight() instanceof Equal
+                    && ((Equal) ((Impl) clause).getRight()).getLeft().equals(root)
+                    && ((Equal) ((Impl) clause).getRight()).getRight() instanceof Add) {
+                left = (Variable) ((Add) ((Equal) ((Impl) clause).getRight()).getRight()).getLeft();
+            }
+        }
+
+        assertTrue(encoder.restrictedSelectors(shape, root, encoding.getRight(), SynthesisLevel.SUBSTITUTION).isEmpty());
+
+        List<Selector> empty = encoder.restrictedSelectors(shape, root, encoding.getRight(), SynthesisLevel.EMPTY);
+        List<Selector> operators = encoder.restrictedSelectors(shape, root, encoding.getRight(), SynthesisLevel.OPERATORS);
+        List<Selector> leaves = encoder.restrictedSelectors(shape, root, encoding.getRight(), SynthesisLevel.LEAVES);
+        for (Node soft : encoding.getMiddle().getRight()) {
+            assertFalse(empty.contains(soft));
+            assertFalse(operators.contains(soft));
+            assertFalse(leaves.contains(soft));
+        }
+
+        assertEquals(new HashSet<>(Collections.singletonList(Library.ADD)), allowed(encoding, root, empty));
+        assertEquals(new HashSet<>(Arrays.asList(Library.ADD, Library.SUB)), allowed(encoding, root, operators));
+        assertEquals(new HashSet<>(Collections.singletonList(Library.ADD)), allowed(encoding, root, leaves));
+        assertEquals(new HashSet<>(Collections.singletonList(x)), allowed(encoding, left, operators));
+        assertEquals(new HashSet<>(Arrays.asList(x, y)), allowed(encoding, left, leaves));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRestrictionToWiderLevel() {
+        Multiset<Node> components = HashMultiset.create();
+        components.add(x);
+        components.add(y);
+        RepairShape shape = new RepairShape(Expression.leaf(x), SynthesisLevel.OPERATORS);
+        TreeBoundedEncoder encoder = new TreeBoundedEncoder();
+        Triple<Variable, Pair<List<Node>, List<Node>>, TreeBoundedEncoder.EncodingInfo> encoding =
+                encoder.encode(shape, components);
+        encoder.restrictedSelectors(shape, encoding.getLeft(), encoding.getRight(), SynthesisLevel.LEAVES);
+    }
+
+    @Test
+    public void testContains() {
+        Node node = new Add(x, IntConst.of(1));
+        assertTrue(node.contains(x));
+        assertFalse(node.contains(y));
+    }
+
+}
@@ -74,4 +74,18 @@ public class TestZ3 {
         }
     }
 
+    @Test(expected = SolverTimeoutException.class)
+    public void testInterrupted() {
+        Z3 interrupted = new Z3();
+        try {
+            interrupted.enableTimeout(1000);
+            interrupted.interrupt();
+            ArrayList<Node> clauses = new ArrayList<>();
+            clauses.add(new Equal(ProgramVariable.mkInt("x"), IntConst.of(1)));
+            interrupted.sat(clauses);
+        } finally {
+            interrupted.close();
+        }
+    }
+
 }
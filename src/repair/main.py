@@ -474,6 +474,21 @@ if __name__ == "__main__":
                         choices=SYNTHESIS_LEVELS,
                         default=['alternatives', 'integer-constants', 'boolean-constants'],
                         help='component levels (default: %(default)s). choices: ' + ', '.join(SYNTHESIS_LEVELS))
+    parser.add_argument('--synthesis-portfolio', action='store_true',
+                        help='run all synthesis levels in parallel, requires --use-nsynth (default: %(default)s)')
+    parser.add_argument('--synthesis-incremental-levels', action='store_true',
+                        help='synthesize nested levels with one encoding and solver, requires --use-nsynth (default: %(default)s)')
+    parser.add_argument('--synthesis-incremental-forest', action='store_true',
+                        help='reuse synthesis constraints when angelic forest grows, requires --use-nsynth (default: %(default)s)')
+    parser.add_argument('--synthesis-cegis', action='store_true',
+                        help='add tests to synthesis lazily, requires --use-nsynth (default: %(default)s)')
+    parser.add_argument('--synthesis-symmetry-breaking', action='store_true',
+                        help='break argument-order symmetry of commutative components, requires --use-nsynth (default: %(default)s)')
+    parser.add_argument('--synthesis-maxsat', metavar='ENGINE', default='fumalik',
+                        choices=['fumalik', 'maxres', 'pd-maxres', 'wmax'],
+                        help='maxsat algorithm: bounded fumalik or weighted with Z3 engine, requires --use-nsynth (default: %(default)s)')
+    parser.add_argument('--synthesis-cache', metavar='DIR', default=None,
+                        help='reuse synthesis results stored in directory, requires --use-nsynth (default: %(default)s)')
     parser.add_argument('--synthesis-global-vars', action='store_true',
                         help='use global program variables for synthesis (default: %(default)s)')
     parser.add_argument('--synthesis-func-params', action='store_true',
@@ -612,6 +627,13 @@ if __name__ == "__main__":
     config['use_nsynth']            = args.use_nsynth
     config['synthesis_timeout']     = args.synthesis_timeout
     config['synthesis_levels']      = args.synthesis_levels
+    config['synthesis_portfolio']   = args.synthesis_portfolio
+    config['synthesis_incremental_levels'] = args.synthesis_incremental_levels
+    config['synthesis_incremental_forest'] = args.synthesis_incremental_forest
+    config['synthesis_cegis']       = args.synthesis_cegis
+    config['synthesis_symmetry_breaking'] = args.synthesis_symmetry_breaking
+    config['synthesis_maxsat']      = args.synthesis_maxsat
+    config['synthesis_cache']       = abspath(args.synthesis_cache) if args.synthesis_cache else None
     config['synthesis_global_vars'] = args.synthesis_global_vars
     config['synthesis_func_params'] = args.synthesis_func_params
     config['synthesis_used_vars']   = True  # for backward compatibility
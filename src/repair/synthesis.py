@@ -21,6 +21,36 @@ class Synthesizer:
         self.config = config
         self.extracted = extracted
         self.angelic_forest_file = angelic_forest_file
+        self.server = None
+
+    def run_server(self, jar, args, stderr):
+        '''
+        Send a job to a persistent nsynth process (started on first use),
+        so that JVM startup and solver initialization are paid only once
+        '''
+        if self.server is None or self.server.poll() is not None:
+            self.server = subprocess.Popen(['java', '-jar', jar, '--server'],
+                                           stdin=subprocess.PIPE,
+                                           stdout=subprocess.PIPE,
+                                           stderr=stderr)
+        angelic_forest_file, extracted, patch_file, config_file = args
+        job = {
+            'angelicForest': os.path.abspath(angelic_forest_file),
+            'extracted': os.path.abspath(extracted),
+            'output': os.path.abspath(patch_file),
+            'config': os.path.abspath(config_file)
+        }
+        try:
+            self.server.stdin.write(bytes(json.dumps(job) + '\n', 'UTF-8'))
+            self.server.stdin.flush()
+            result = self.server.stdout.readline()
+        except BrokenPipeError:
+            result = b''
+        if len(result) == 0 or result.strip() == b'ERROR':
+            if len(result) == 0:
+                self.server = None
+            raise subprocess.CalledProcessError(1, ['java', '-jar', jar, '--server'])
+        return result
 
     def dump_angelic_forest(self, angelic_forest):
         '''
@@ -66,7 +96,16 @@ class Synthesizer:
         patch_file = join(dirpath, 'patch')
         config_file = join(dirpath, 'config.json')
 
-        for level in self.config['synthesis_levels']:
+        if self.config['use_nsynth'] and (self.config['synthesis_portfolio'] or
+                                          self.config['synthesis_incremental_levels']):
+            # all levels are raced or solved incrementally inside one nsynth job
+            level_groups = [self.config['synthesis_levels']]
+        else:
+            level_groups = [[level] for level in self.config['synthesis_levels']]
+
+        for levels in level_groups:
+
+            level = ', '.join(levels)
 
             logger.info('synthesizing patch with component level \'{}\''.format(level))
 
@@ -82,10 +121,20 @@ class Synthesizer:
                 "simplification": False,
                 "reuseStructure": not self.config['semfix'],
                 "spaceReduction": True,
-                "componentLevel": level,
+                "componentLevel": levels[0],
+                "componentLevels": levels,
                 "solverBound": 3,
-                "solverTimeout": self.config['synthesis_timeout']
+                "solverTimeout": self.config['synthesis_timeout'],
+                "cegis": self.config['synthesis_cegis'],
+                "symmetryBreaking": self.config['synthesis_symmetry_breaking'],
+                "portfolio": self.config['synthesis_portfolio'],
+                "incrementalLevels": self.config['synthesis_incremental_levels'],
+                # nsynth server keeps constraints of previous jobs and asserts only new tests
+                "incrementalForest": self.config['synthesis_incremental_forest'],
+                "maxsat": self.config['synthesis_maxsat']
             }
+            if self.config['synthesis_cache'] is not None:
+                config["resultCache"] = self.config['synthesis_cache']
 
             with open(config_file, 'w') as file:
                 json.dump(config, file)
@@ -105,7 +154,10 @@ class Synthesizer:
             synthesis_start_time = time.time()
             
             try:
-                result = subprocess.check_output(['java', '-jar', jar] + args, stderr=stderr)
+                if self.config['use_nsynth']:
+                    result = self.run_server(jar, args, stderr)
+                else:
+                    result = subprocess.check_output(['java', '-jar', jar] + args, stderr=stderr)
             except subprocess.CalledProcessError:
                 logger.warning("synthesis returned non-zero code")
                 continue
@@ -117,6 +169,11 @@ class Synthesizer:
                 iter_stat['tests'] = len(angelic_forest)
                 iter_stat['level'] = level
                 iter_stat['time'] = synthesis_elapsed
+                metrics_file = patch_file + '.metrics.json'
+                if os.path.exists(metrics_file):
+                    with open(metrics_file) as file:
+                        iter_stat['metrics'] = json.load(file)
+                    os.remove(metrics_file)
                 statistics.data['iterations']['synthesis'].append(iter_stat)
                 statistics.save()
 